@@ -0,0 +1,348 @@
+package ca.ubc.cs317.dict.bench;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.server.Corpus;
+import ca.ubc.cs317.dict.server.EmbeddedDictServer;
+import ca.ubc.cs317.dict.util.LatencyHistogram;
+
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator that drives a number of concurrent DictionaryConnection sessions through DEFINE and MATCH lookups and
+ * reports, for each command, the throughput, error counts, and latency percentiles up to p99.9.
+ * <p>
+ * Two latencies are recorded for every lookup. The service time is measured from the moment the command is sent. The
+ * corrected latency also includes the time the lookup should already have been running, which hides queueing delays
+ * when it is left out ("coordinated omission"): with a target rate, it is measured from the time the lookup was
+ * scheduled to start; without one, each session sends lookups back to back, and stalls are back-filled with the
+ * latencies that the lookups that would have been sent in the meantime would have seen, taking the median service time
+ * during warm-up as the expected interval between lookups. Back to back, a command needs at least MIN_WARMUP_SAMPLES
+ * warm-up lookups for that median to mean anything; otherwise its latencies are left uncorrected, which the report
+ * points out.
+ * <p>
+ * Without a host, the load is sent to an EmbeddedDictServer with a generated corpus. Run without arguments for the
+ * defaults, or see the usage message printed for an unknown option.
+ */
+public class LoadGenerator {
+
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+    private static final int MIN_WARMUP_SAMPLES = 20;
+
+    private String host = null;
+    private int port = 2628;
+    private int sessions = 4;
+    private long warmupSeconds = 2;
+    private long durationSeconds = 10;
+    private double ratePerSession = 0;
+    private double matchRatio = 0.2;
+    private String distribution = "zipf";
+    private double zipfExponent = 1.0;
+    private String wordsFile = null;
+    private int vocabularySize = 10_000;
+    private long serverLatencyMillis = 0;
+    private Database database = new Database("*", "All databases");
+    private MatchingStrategy strategy = new MatchingStrategy("prefix", "Match prefixes");
+
+    private final CommandStats define = new CommandStats("DEFINE");
+    private final CommandStats match = new CommandStats("MATCH");
+    private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<>();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--host": generator.host = args[++i]; break;
+                    case "--port": generator.port = Integer.parseInt(args[++i]); break;
+                    case "--sessions": generator.sessions = Integer.parseInt(args[++i]); break;
+                    case "--warmup": generator.warmupSeconds = Long.parseLong(args[++i]); break;
+                    case "--duration": generator.durationSeconds = Long.parseLong(args[++i]); break;
+                    case "--rate": generator.ratePerSession = Double.parseDouble(args[++i]); break;
+                    case "--match-ratio": generator.matchRatio = Double.parseDouble(args[++i]); break;
+                    case "--distribution": generator.distribution = distribution(args[++i]); break;
+                    case "--zipf-exponent": generator.zipfExponent = Double.parseDouble(args[++i]); break;
+                    case "--words": generator.wordsFile = args[++i]; break;
+                    case "--vocabulary": generator.vocabularySize = Integer.parseInt(args[++i]); break;
+                    case "--server-latency": generator.serverLatencyMillis = Long.parseLong(args[++i]); break;
+                    case "--database": generator.database = new Database(args[++i], null); break;
+                    case "--strategy": generator.strategy = new MatchingStrategy(args[++i], null); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage() == null ? e.toString() : e.getMessage());
+            System.err.println("Usage: LoadGenerator [--host host] [--port port] [--sessions n] [--warmup s]"
+                    + " [--duration s] [--rate lookups/s per session, 0 for back to back] [--match-ratio 0..1]"
+                    + " [--distribution zipf|uniform|replay] [--zipf-exponent s] [--words file]"
+                    + " [--vocabulary n] [--server-latency ms] [--database name] [--strategy name]");
+            System.exit(2);
+        }
+        generator.run();
+    }
+
+    private static String distribution(String name) {
+        switch (name) {
+            case "zipf":
+            case "uniform":
+            case "replay":
+                return name;
+            default:
+                throw new IllegalArgumentException("Unknown distribution: " + name);
+        }
+    }
+
+    private void run() throws Exception {
+        List<String> vocabulary = new ArrayList<>();
+        if (wordsFile != null) {
+            vocabulary = WordDistribution.readWords(Paths.get(wordsFile));
+        } else {
+            for (int i = 0; i < vocabularySize; i++)
+                vocabulary.add(word(i));
+        }
+        WordDistribution words;
+        switch (distribution) {
+            case "uniform": words = WordDistribution.uniform(vocabulary); break;
+            case "replay": words = WordDistribution.replay(vocabulary); break;
+            case "zipf": words = WordDistribution.zipfian(vocabulary, zipfExponent); break;
+            default: throw new IllegalArgumentException("Unknown distribution: " + distribution);
+        }
+
+        EmbeddedDictServer server = null;
+        if (host == null) {
+            server = new EmbeddedDictServer(corpus(vocabulary)).start();
+            server.setLatency("*", serverLatencyMillis);
+            host = server.getHost();
+            port = server.getPort();
+        }
+
+        System.out.println(String.format(Locale.ROOT,
+                "%d sessions against %s:%d, %s, %s words, %.0f%% MATCH, warm-up %ds, duration %ds",
+                sessions, host, port, ratePerSession > 0 ? ratePerSession + " lookups/s per session" : "back to back",
+                distribution, matchRatio * 100, warmupSeconds, durationSeconds));
+
+        long start = System.nanoTime();
+        final long measureStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        final long end = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            final Session session = new Session(words, new Random(i), start, measureStart, end);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    session.run();
+                }
+            }, "load-session-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        report(durationSeconds);
+        if (server != null)
+            server.close();
+    }
+
+    /** Generates a corpus in which every word of the vocabulary is defined in the first database, and some of them in
+     * the others as well, so that '*' lookups return different numbers of definitions.
+     */
+    private static Corpus corpus(List<String> vocabulary) {
+        Corpus corpus = new Corpus()
+                .addDatabase("wn", "WordNet (r) 3.0 (2006)")
+                .addDatabase("gcide", "The Collaborative International Dictionary of English")
+                .addDatabase("jargon", "The Jargon File");
+        for (int i = 0; i < vocabulary.size(); i++) {
+            String word = vocabulary.get(i);
+            corpus.addDefinition("wn", word, word + "\n    n 1: generated definition number " + i
+                    + "\n    2: a second sense of the word, as most entries have several");
+            if (i % 2 == 0)
+                corpus.addDefinition("gcide", word, word + " \\" + word + "\\, n.\n   Generated definition " + i + ".");
+            if (i % 5 == 0)
+                corpus.addDefinition("jargon", word, word + " n.\n\n   Generated jargon entry " + i + ".");
+        }
+        return corpus;
+    }
+
+    /** Generates a pronounceable word for an index, different for every index.
+     */
+    private static String word(int index) {
+        String consonants = "bdfgklmnprstvz";
+        String vowels = "aeiou";
+        StringBuilder word = new StringBuilder();
+        do {
+            word.append(consonants.charAt(index % consonants.length()));
+            index /= consonants.length();
+            word.append(vowels.charAt(index % vowels.length()));
+            index /= vowels.length();
+        } while (index > 0);
+        return word.toString();
+    }
+
+    private void report(long seconds) {
+        System.out.println();
+        StringBuilder header = new StringBuilder(String.format(Locale.ROOT, "%-8s %9s %7s %10s  %-10s",
+                "Command", "count", "errors", "lookups/s", "latency"));
+        for (double percentile : PERCENTILES)
+            header.append(String.format(Locale.ROOT, " %9s", "p" + (percentile == (long) percentile ?
+                    Long.toString((long) percentile) : Double.toString(percentile))));
+        header.append(String.format(Locale.ROOT, " %9s %9s", "max", "mean"));
+        System.out.println(header + "   (microseconds)");
+
+        long total = 0;
+        for (CommandStats stats : Arrays.asList(define, match)) {
+            long count = stats.service.getTotalCount();
+            total += count;
+            System.out.println(String.format(Locale.ROOT, "%-8s %9d %7d %10.1f  %-10s%s", stats.name, count,
+                    stats.errors.get(), (double) count / seconds, "service", percentiles(stats.service)));
+            if (ratePerSession > 0 || stats.getExpectedIntervalMicros() > 0) {
+                System.out.println(String.format(Locale.ROOT, "%-8s %9s %7s %10s  %-10s%s", "", "", "", "",
+                        "corrected", percentiles(stats.corrected)));
+            } else {
+                System.out.println(String.format(Locale.ROOT, "%-8s %9s %7s %10s  %-10s %s", "", "", "", "",
+                        "corrected", "n/a: only " + stats.warmup.getTotalCount() + " warm-up lookups, "
+                                + MIN_WARMUP_SAMPLES + " needed to estimate the interval (use a longer --warmup)"));
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "Total: %.1f lookups/s, %d reconnects", (double) total / seconds,
+                reconnects.get()));
+        for (Map.Entry<String, AtomicLong> error : new TreeMap<>(errors).entrySet())
+            System.out.println(String.format(Locale.ROOT, "  %6d x %s", error.getValue().get(), error.getKey()));
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        StringBuilder line = new StringBuilder();
+        for (double percentile : PERCENTILES)
+            line.append(String.format(Locale.ROOT, " %9d", histogram.getValueAtPercentile(percentile)));
+        line.append(String.format(Locale.ROOT, " %9d %9.1f", histogram.getMaxValue(), histogram.getMean()));
+        return line.toString();
+    }
+
+    private static class CommandStats {
+        private final String name;
+        private final LatencyHistogram warmup = new LatencyHistogram(HIGHEST_LATENCY_MICROS);
+        private final LatencyHistogram service = new LatencyHistogram(HIGHEST_LATENCY_MICROS);
+        private final LatencyHistogram corrected = new LatencyHistogram(HIGHEST_LATENCY_MICROS);
+        private final AtomicLong errors = new AtomicLong();
+        private volatile long expectedIntervalMicros = -1;
+
+        private CommandStats(String name) {
+            this.name = name;
+        }
+
+        /** Returns the expected interval between back-to-back lookups, or 0 if there were too few warm-up lookups to
+         * tell, in which case latencies can't be corrected.
+         */
+        private long getExpectedIntervalMicros() {
+            if (expectedIntervalMicros < 0) {
+                expectedIntervalMicros = warmup.getTotalCount() < MIN_WARMUP_SAMPLES ? 0 :
+                        Math.max(1, warmup.getValueAtPercentile(50));
+            }
+            return expectedIntervalMicros;
+        }
+    }
+
+    private class Session {
+        private final WordDistribution words;
+        private final Random random;
+        private final long start;
+        private final long measureStart;
+        private final long end;
+        private DictionaryConnection connection;
+
+        private Session(WordDistribution words, Random random, long start, long measureStart, long end) {
+            this.words = words;
+            this.random = random;
+            this.start = start;
+            this.measureStart = measureStart;
+            this.end = end;
+        }
+
+        private void run() {
+            long interval = ratePerSession > 0 ? (long) (1e9 / ratePerSession) : 0;
+            // Spread the first lookups of the sessions over one interval, so they don't all start at once
+            long intended = start + (interval > 0 ? (long) (random.nextDouble() * interval) : 0);
+            try {
+                while (true) {
+                    if (interval > 0) {
+                        // Lookups that are behind schedule are sent right away, and their delay counts as latency
+                        long wait = intended - System.nanoTime();
+                        if (wait > 0)
+                            LockSupport.parkNanos(wait);
+                    } else {
+                        intended = System.nanoTime();
+                    }
+                    if (intended >= end)
+                        break;
+                    lookup(intended);
+                    intended += interval;
+                }
+            } finally {
+                if (connection != null)
+                    connection.close();
+            }
+        }
+
+        private void lookup(long intended) {
+            CommandStats stats = random.nextDouble() < matchRatio ? match : define;
+            String word = words.next(random);
+            long sent = System.nanoTime();
+            try {
+                if (connection == null) {
+                    connection = new DictionaryConnection(host, port);
+                    sent = System.nanoTime(); // The handshake is not part of the lookup
+                }
+                if (stats == match)
+                    connection.getMatchList(word, strategy, database);
+                else
+                    connection.getDefinitions(word, database);
+            } catch (DictConnectionException e) {
+                if (sent >= measureStart) {
+                    stats.errors.incrementAndGet();
+                    count(stats.name + ": " + e.getMessage());
+                }
+                // The state of the session is unknown after an error, so start a new one
+                if (connection != null) {
+                    connection.close();
+                    connection = null;
+                    reconnects.incrementAndGet();
+                }
+                return;
+            }
+            long received = System.nanoTime();
+            long serviceMicros = TimeUnit.NANOSECONDS.toMicros(received - sent);
+            if (sent < measureStart) {
+                stats.warmup.recordValue(serviceMicros);
+            } else if (ratePerSession > 0) {
+                stats.service.recordValue(serviceMicros);
+                stats.corrected.recordValue(TimeUnit.NANOSECONDS.toMicros(received - intended));
+            } else {
+                stats.service.recordValue(serviceMicros);
+                long expectedInterval = stats.getExpectedIntervalMicros();
+                if (expectedInterval > 0)
+                    stats.corrected.recordValueWithExpectedInterval(serviceMicros, expectedInterval);
+            }
+        }
+
+        private void count(String error) {
+            AtomicLong counter = errors.get(error);
+            if (counter == null) {
+                AtomicLong created = new AtomicLong();
+                counter = errors.putIfAbsent(error, created);
+                if (counter == null)
+                    counter = created;
+            }
+            counter.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package ca.ubc.cs317.dict.bench;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.Status;
+import ca.ubc.cs317.dict.server.Corpus;
+import ca.ubc.cs317.dict.server.EmbeddedDictServer;
+import ca.ubc.cs317.dict.util.AtomScanner;
+import ca.ubc.cs317.dict.util.DictStringParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Micro-benchmarks for the hot paths of the protocol client: atom splitting, status line parsing, definition
+ * assembly, and complete DEFINE, MATCH and SHOW DB round trips against an EmbeddedDictServer. For each benchmark,
+ * reports the throughput in operations per second and the number of bytes allocated by the benchmark thread per
+ * operation, averaged over several timed iterations after a warm-up.
+ * <p>
+ * Usage: ProtocolBenchmark [-w warmupIterations] [-i iterations] [-t iterationMillis] [filter...]. Only benchmarks
+ * whose name contains one of the filters are run; all of them are run if there is no filter.
+ */
+public class ProtocolBenchmark {
+
+    private static final int DATABASE_COUNT = 200;
+    private static final int MATCH_COUNT = 1000;
+    private static final int SMALL_DEFINITION_LINES = 8;
+    private static final int LARGE_DEFINITION_LINES = 2000;
+
+    private static final String MATCH_LINE = "wn \"household appliance\"";
+    private static final String DEFINITION_HEADER = "151 \"household\" wn \"WordNet (r) 3.0 (2006)\"";
+    private static final String STATUS_LINE = "250 ok [d/m/c = 3/0/45; 0.000r 0.000u 0.000s]";
+
+    // Results are folded into this field so the JIT can't discard the work being measured
+    private static volatile long sink;
+
+    private int warmupIterations = 5;
+    private int iterations = 10;
+    private long iterationMillis = 1000;
+    private final List<String> filters = new ArrayList<>();
+
+    private EmbeddedDictServer server;
+    private DictionaryConnection connection;
+    private final Database wn = new Database("wn", "WordNet (r) 3.0 (2006)");
+    private final MatchingStrategy prefix = new MatchingStrategy("prefix", "Match prefixes");
+    private String[] largeDefinitionLines;
+
+    public static void main(String[] args) throws Exception {
+        ProtocolBenchmark benchmark = new ProtocolBenchmark();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-w": benchmark.warmupIterations = Integer.parseInt(args[++i]); break;
+                case "-i": benchmark.iterations = Integer.parseInt(args[++i]); break;
+                case "-t": benchmark.iterationMillis = Long.parseLong(args[++i]); break;
+                default: benchmark.filters.add(args[i]);
+            }
+        }
+        benchmark.run();
+    }
+
+    private void run() throws Exception {
+        setUp();
+        try {
+            System.out.println(String.format(Locale.ROOT, "%-32s %16s %10s %12s", "Benchmark", "ops/s", "error", "B/op"));
+            for (Benchmark benchmark : benchmarks())
+                if (selected(benchmark.name))
+                    report(benchmark.name, measure(benchmark));
+        } finally {
+            tearDown();
+        }
+    }
+
+    private List<Benchmark> benchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<>();
+        benchmarks.add(new Benchmark("splitAtoms.matchLine") {
+            @Override
+            long op() {
+                return DictStringParser.splitAtoms(MATCH_LINE).length;
+            }
+        });
+        benchmarks.add(new Benchmark("splitAtoms.definitionHeader") {
+            @Override
+            long op() {
+                return DictStringParser.splitAtoms(DEFINITION_HEADER)[1].length();
+            }
+        });
+        benchmarks.add(new Benchmark("atomScanner.definitionHeader") {
+            private final AtomScanner scanner = new AtomScanner();
+
+            @Override
+            long op() {
+                scanner.reset(DEFINITION_HEADER).skip(1);
+                return scanner.nextAtom().length();
+            }
+        });
+        benchmarks.add(new Benchmark("status.readStatus") {
+            @Override
+            long op() throws Exception {
+                return Status.readStatus(new BufferedReader(new StringReader(STATUS_LINE))).getStatusCode();
+            }
+        });
+        benchmarks.add(new Benchmark("definition.appendLarge") {
+            @Override
+            long op() {
+                Definition definition = new Definition("household", wn);
+                for (String line : largeDefinitionLines)
+                    definition.appendDefinition(line);
+                return definition.getDefinition().length();
+            }
+        });
+        benchmarks.add(new Benchmark("connection.defineSmall") {
+            @Override
+            long op() throws Exception {
+                return connection.getDefinitions("house", wn).size();
+            }
+        });
+        benchmarks.add(new Benchmark("connection.defineLarge") {
+            @Override
+            long op() throws Exception {
+                return connection.getDefinitions("household", wn).size();
+            }
+        });
+        benchmarks.add(new Benchmark("connection.match1000") {
+            @Override
+            long op() throws Exception {
+                return connection.getMatchList("hw", prefix, wn).size();
+            }
+        });
+        benchmarks.add(new Benchmark("connection.showDatabases") {
+            @Override
+            long op() throws Exception {
+                // The database list is cached per connection, so each operation needs a new one
+                DictionaryConnection fresh = new DictionaryConnection(server.getHost(), server.getPort());
+                try {
+                    return fresh.getDatabaseList().size();
+                } finally {
+                    fresh.close();
+                }
+            }
+        });
+        return benchmarks;
+    }
+
+    private void setUp() throws IOException, DictConnectionException {
+        Corpus corpus = new Corpus().addDatabase(wn.getName(), wn.getDescription());
+        for (int i = 1; i < DATABASE_COUNT; i++)
+            corpus.addDatabase("db" + i, "Fixture database number " + i);
+
+        largeDefinitionLines = definitionLines("household", LARGE_DEFINITION_LINES);
+        corpus.addDefinition(wn.getName(), "house", join(definitionLines("house", SMALL_DEFINITION_LINES)));
+        corpus.addDefinition(wn.getName(), "household", join(largeDefinitionLines));
+        for (int i = 0; i < MATCH_COUNT; i++)
+            corpus.addDefinition(wn.getName(), "hw" + Integer.toString(i, 36) + " headword", "headword " + i);
+
+        server = new EmbeddedDictServer(corpus).start();
+        connection = new DictionaryConnection(server.getHost(), server.getPort());
+        connection.getDatabaseList();
+    }
+
+    private void tearDown() {
+        if (connection != null)
+            connection.close();
+        if (server != null)
+            server.close();
+    }
+
+    private static String[] definitionLines(String word, int count) {
+        String[] lines = new String[count];
+        lines[0] = word;
+        for (int i = 1; i < count; i++)
+            lines[i] = "     " + i + ": a line of the definition of " + word + ", of typical length for WordNet";
+        return lines;
+    }
+
+    private static String join(String[] lines) {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines)
+            text.append(text.length() == 0 ? "" : "\n").append(line);
+        return text.toString();
+    }
+
+    private boolean selected(String name) {
+        if (filters.isEmpty())
+            return true;
+        for (String filter : filters)
+            if (name.contains(filter))
+                return true;
+        return false;
+    }
+
+    /** Runs the warm-up and timed iterations of a benchmark.
+     *
+     * @return The throughput and allocation rate of each timed iteration, as pairs of values.
+     */
+    private double[][] measure(Benchmark benchmark) throws Exception {
+        for (int i = 0; i < warmupIterations; i++)
+            iteration(benchmark);
+        double[][] results = new double[iterations][];
+        for (int i = 0; i < iterations; i++)
+            results[i] = iteration(benchmark);
+        return results;
+    }
+
+    private double[] iteration(Benchmark benchmark) throws Exception {
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long operations = 0;
+        long result = 0;
+        // Check the clock in batches, so that reading it doesn't dominate very short operations
+        do {
+            for (int i = 0; i < 64; i++)
+                result += benchmark.op();
+            operations += 64;
+        } while (System.nanoTime() < deadline);
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        sink += result;
+        return new double[] { operations * 1e9 / elapsed, allocatedBefore < 0 ? Double.NaN : (double) allocated / operations };
+    }
+
+    private static void report(String name, double[][] results) {
+        double throughput = 0;
+        double allocation = 0;
+        for (double[] result : results) {
+            throughput += result[0];
+            allocation += result[1];
+        }
+        throughput /= results.length;
+        allocation /= results.length;
+
+        double variance = 0;
+        for (double[] result : results)
+            variance += (result[0] - throughput) * (result[0] - throughput);
+        double error = results.length > 1 ? Math.sqrt(variance / (results.length - 1)) : 0;
+
+        System.out.println(String.format(Locale.ROOT, "%-32s %16.1f %10.1f %12s", name, throughput, error,
+                Double.isNaN(allocation) ? "n/a" : String.format(Locale.ROOT, "%.1f", allocation)));
+    }
+
+    /** Returns the number of bytes allocated so far by the current thread, or -1 if the JVM can't report it.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled())
+                return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private abstract static class Benchmark {
+        private final String name;
+
+        Benchmark(String name) {
+            this.name = name;
+        }
+
+        /** Performs one operation.
+         *
+         * @return A value derived from the result, which is consumed so the operation can't be optimized away.
+         */
+        abstract long op() throws Exception;
+    }
+}
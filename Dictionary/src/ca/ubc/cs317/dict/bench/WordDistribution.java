@@ -0,0 +1,83 @@
+package ca.ubc.cs317.dict.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Source of the words looked up by the LoadGenerator. Words are either drawn at random from a vocabulary, uniformly or
+ * following a Zipf distribution (where the k-th most frequent word is looked up in proportion to 1/k^s, as in real
+ * query logs), or replayed in order from a list, cycling back to the start at the end. Implementations are safe to
+ * share between sessions, each of which passes its own Random.
+ */
+abstract class WordDistribution {
+
+    abstract String next(Random random);
+
+    static WordDistribution uniform(final List<String> words) {
+        final String[] vocabulary = words.toArray(new String[words.size()]);
+        return new WordDistribution() {
+            @Override
+            String next(Random random) {
+                return vocabulary[random.nextInt(vocabulary.length)];
+            }
+        };
+    }
+
+    /** Creates a Zipf distribution over a vocabulary, in which the first word is the most frequent.
+     *
+     * @param words The vocabulary, from most to least frequent.
+     * @param exponent Exponent s of the distribution; 1 is typical for natural language.
+     */
+    static WordDistribution zipfian(final List<String> words, double exponent) {
+        final String[] vocabulary = words.toArray(new String[words.size()]);
+        final double[] cumulative = new double[vocabulary.length];
+        double total = 0;
+        for (int k = 0; k < vocabulary.length; k++) {
+            total += 1 / Math.pow(k + 1, exponent);
+            cumulative[k] = total;
+        }
+        final double sum = total;
+        return new WordDistribution() {
+            @Override
+            String next(Random random) {
+                int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                if (index < 0)
+                    index = -index - 1;
+                return vocabulary[Math.min(index, vocabulary.length - 1)];
+            }
+        };
+    }
+
+    /** Creates a distribution that replays a list of words in order, shared by all sessions.
+     */
+    static WordDistribution replay(final List<String> words) {
+        final String[] log = words.toArray(new String[words.size()]);
+        final AtomicLong position = new AtomicLong();
+        return new WordDistribution() {
+            @Override
+            String next(Random random) {
+                return log[(int) (position.getAndIncrement() % log.length)];
+            }
+        };
+    }
+
+    /** Reads a list of words, one per line, ignoring blank lines.
+     */
+    static List<String> readWords(Path path) throws IOException {
+        List<String> words = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty())
+                words.add(line.trim());
+        }
+        if (words.isEmpty())
+            throw new IOException("No words in " + path);
+        return words;
+    }
+}
@@ -0,0 +1,169 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DefinitionCollector;
+import ca.ubc.cs317.dict.net.DefinitionListener;
+import ca.ubc.cs317.dict.net.DictionaryClient;
+
+import java.util.*;
+
+/**
+ * DictionaryClient that answers repeated DEFINE and MATCH requests from an in-memory cache, and only forwards requests
+ * it hasn't seen recently to the wrapped client. Empty results are cached as well, so words that are not in the
+ * dictionary don't cost a round trip every time either.
+ */
+public class CachingDictionaryClient implements DictionaryClient, CachingDictionaryClientMXBean {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    public static final long DEFAULT_TTL_MILLIS = 60L * 60 * 1000;
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 5L * 60 * 1000;
+
+    // Rough per-object overhead used when estimating the size of cached results
+    private static final int OBJECT_OVERHEAD = 48;
+
+    private final DictionaryClient client;
+    private final ResultCache<Key, Object> cache;
+
+    /** Wraps a client with a cache of the given limits.
+     *
+     * @param client The client used for requests that can't be answered from the cache.
+     * @param maxEntries Maximum number of results kept in the cache
+     * @param maxBytes Maximum estimated size of all results kept in the cache
+     * @param ttlMillis Time after which a result is requested again
+     * @param negativeTtlMillis Time after which an empty result is requested again
+     */
+    public CachingDictionaryClient(DictionaryClient client, int maxEntries, long maxBytes, long ttlMillis, long negativeTtlMillis) {
+        this.client = client;
+        this.cache = new ResultCache<>(maxEntries, maxBytes, ttlMillis, negativeTtlMillis);
+    }
+
+    /** Wraps a client with a cache of the default limits.
+     *
+     * @param client The client used for requests that can't be answered from the cache.
+     */
+    public CachingDictionaryClient(DictionaryClient client) {
+        this(client, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES, DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        Key key = new Key("DEFINE", word.trim(), database.getName(), null);
+        Collection<Definition> definitions = (Collection<Definition>) cache.get(key);
+        if (definitions != null)
+            return definitions;
+
+        return cacheDefinitions(key, client.getDefinitions(word, database));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void streamDefinitions(String word, Database database, DefinitionListener listener) throws DictConnectionException {
+        Key key = new Key("DEFINE", word.trim(), database.getName(), null);
+        Collection<Definition> definitions = (Collection<Definition>) cache.get(key);
+        if (definitions != null) {
+            for (Definition definition : definitions)
+                listener.definitionReceived(definition);
+            return;
+        }
+
+        DefinitionCollector collector = new DefinitionCollector(listener);
+        client.streamDefinitions(word, database, collector);
+        cacheDefinitions(key, collector.getDefinitions());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        Key key = new Key("MATCH", word.trim(), database.getName(), strategy.getName());
+        Set<String> matches = (Set<String>) cache.get(key);
+        if (matches != null)
+            return matches;
+
+        matches = Collections.unmodifiableSet(new LinkedHashSet<>(client.getMatchList(word, strategy, database)));
+        long size = OBJECT_OVERHEAD;
+        for (String match : matches)
+            size += sizeOf(match);
+        cache.put(key, matches, size, matches.isEmpty());
+        return matches;
+    }
+
+    private Collection<Definition> cacheDefinitions(Key key, Collection<Definition> retrieved) {
+        Collection<Definition> definitions = Collections.unmodifiableCollection(new ArrayList<>(retrieved));
+        long size = OBJECT_OVERHEAD;
+        for (Definition definition : definitions)
+            size += sizeOf(definition);
+        cache.put(key, definitions, size, definitions.isEmpty());
+        return definitions;
+    }
+
+    @Override
+    public Collection<Database> getDatabaseList() throws DictConnectionException {
+        return client.getDatabaseList();
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        return client.getStrategyList();
+    }
+
+    @Override
+    public void close() {
+        cache.clear();
+        client.close();
+    }
+
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    public DictionaryClient getClient() {
+        return client;
+    }
+
+    private static long sizeOf(String string) {
+        return string == null ? 0 : OBJECT_OVERHEAD + 2L * string.length();
+    }
+
+    private static long sizeOf(Definition definition) {
+        return OBJECT_OVERHEAD + sizeOf(definition.getWord()) + sizeOf(definition.getDefinition());
+    }
+
+    private static class Key {
+        private final String command;
+        private final String word;
+        private final String database;
+        private final String strategy;
+
+        private Key(String command, String word, String database, String strategy) {
+            this.command = command;
+            this.word = word;
+            this.database = database;
+            this.strategy = strategy;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            return command.equals(key.command) && word.equals(key.word) && database.equals(key.database) &&
+                    (strategy != null ? strategy.equals(key.strategy) : key.strategy == null);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = command.hashCode();
+            result = 31 * result + word.hashCode();
+            result = 31 * result + database.hashCode();
+            result = 31 * result + (strategy != null ? strategy.hashCode() : 0);
+            return result;
+        }
+    }
+}
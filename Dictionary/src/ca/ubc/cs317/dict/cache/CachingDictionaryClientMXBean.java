@@ -0,0 +1,9 @@
+package ca.ubc.cs317.dict.cache;
+
+/**
+ * Management interface of CachingDictionaryClient.
+ */
+public interface CachingDictionaryClientMXBean {
+
+    CacheStats getStats();
+}
@@ -0,0 +1,393 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent store of DEFINE results, kept in a single append-only file that is memory-mapped for reading. Every put
+ * appends a record with all definitions for a (word, database) pair; an in-memory index, rebuilt by scanning the file
+ * when it is opened, points to the latest record for each pair. Records that have been superseded are dropped by a
+ * background compaction once they take up more space than the live ones.
+ * <p>
+ * Each record is framed as its payload length and CRC32, so a record that was only partially written when the
+ * application stopped is detected and discarded the next time the store is opened.
+ */
+public class DefinitionStore implements Closeable {
+
+    private static final int MAGIC = 0x44494354; // "DICT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    // Compaction only runs once there is at least this much superseded data
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+
+    private final Path path;
+    // Offset of the latest record for each key in the upper 32 bits, and its total size in the lower 32 bits
+    private final Map<String, Long> index = new HashMap<>();
+    private final ExecutorService compactor;
+
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long end;
+    private long liveBytes;
+    private long deadBytes;
+    private boolean compacting = false;
+    private boolean closed = false;
+
+    /** Opens a store, creating its file if it doesn't exist yet, and rebuilds the index from the records in it.
+     *
+     * @param path Location of the data file.
+     * @throws IOException If the file can't be created or read, or is not a definition store.
+     */
+    public DefinitionStore(Path path) throws IOException {
+        this.path = path;
+        open();
+        compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "dict-store-compactor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** Retrieves the definitions last stored for a word in a database.
+     *
+     * @param word The word that was looked up.
+     * @param databaseName Name of the database used in the lookup (may be '*' or '!').
+     * @return The stored definitions and the time they were stored, or null if there are none.
+     * @throws IOException If the data file can't be read.
+     */
+    public synchronized Entry get(String word, String databaseName) throws IOException {
+        if (closed)
+            return null;
+        Long location = index.get(key(word, databaseName));
+        if (location == null)
+            return null;
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(readRecord(location >>> 32)));
+        in.readUTF(); // Key word
+        in.readUTF(); // Key database
+        long storedAt = in.readLong();
+        int count = in.readInt();
+        List<Definition> definitions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String definitionWord = in.readUTF();
+            String name = in.readUTF();
+            String description = in.readUTF();
+            Definition definition = new Definition(definitionWord, name.isEmpty() ? null : new Database(name, description));
+            int length = in.readInt();
+            if (length >= 0) {
+                byte[] body = new byte[length];
+                in.readFully(body);
+                definition.setDefinition(new String(body, StandardCharsets.UTF_8));
+            }
+            definitions.add(definition);
+        }
+        return new Entry(definitions, storedAt);
+    }
+
+    /** Appends the definitions retrieved for a word in a database, replacing any that were stored before.
+     *
+     * @param word The word that was looked up.
+     * @param databaseName Name of the database used in the lookup (may be '*' or '!').
+     * @param definitions The definitions returned by the server, possibly none.
+     * @throws IOException If the record can't be written.
+     */
+    public void put(String word, String databaseName, Collection<Definition> definitions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // Length and checksum, filled in below
+        out.writeInt(0);
+        out.writeUTF(word);
+        out.writeUTF(databaseName);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(definitions.size());
+        for (Definition definition : definitions) {
+            Database database = definition.getDatabase();
+            out.writeUTF(definition.getWord());
+            out.writeUTF(database == null ? "" : database.getName());
+            out.writeUTF(database == null || database.getDescription() == null ? "" : database.getDescription());
+            if (definition.getDefinition() == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] body = definition.getDefinition().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(body.length);
+                out.write(body);
+            }
+        }
+        out.flush();
+
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, record.capacity() - RECORD_HEADER_SIZE);
+        record.putInt(0, record.capacity() - RECORD_HEADER_SIZE);
+        record.putInt(4, (int) crc.getValue());
+
+        synchronized (this) {
+            if (closed)
+                throw new IOException("Definition store is closed");
+            if (end + record.capacity() > Integer.MAX_VALUE)
+                throw new IOException("Definition store is full");
+            long offset = end;
+            try {
+                while (record.hasRemaining())
+                    end += channel.write(record, end);
+            } catch (IOException e) {
+                // Drop the partial record so later appends are not hidden behind it
+                end = offset;
+                channel.truncate(offset);
+                throw e;
+            }
+            indexRecord(key(word, databaseName), offset, record.capacity());
+            if (!compacting && deadBytes > MIN_COMPACTION_BYTES && deadBytes > liveBytes) {
+                compacting = true;
+                compactor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        compact();
+                    }
+                });
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public synchronized long getDeadBytes() {
+        return deadBytes;
+    }
+
+    /** Stops background compaction and closes the data file. Any exception raised while closing is ignored.
+     */
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+        synchronized (this) {
+            closed = true;
+            mapped = null;
+            try {
+                channel.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /** Rewrites the data file with only the latest record for each key. Live records are copied without holding the
+     * lock; only records appended in the meantime are copied while readers and writers wait.
+     */
+    void compact() {
+        List<Long> offsets;
+        long snapshotEnd;
+        FileChannel source;
+        synchronized (this) {
+            if (closed) {
+                compacting = false;
+                return;
+            }
+            offsets = new ArrayList<>(index.values()); // Sorting packed locations sorts them by offset
+            snapshotEnd = end;
+            source = channel;
+        }
+        Collections.sort(offsets);
+
+        Path temp = path.resolveSibling(path.getFileName() + ".compact");
+        FileChannel target = null;
+        try {
+            target = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            writeHeader(target);
+            for (long location : offsets)
+                copy(source, location >>> 32, (int) location, target);
+
+            synchronized (this) {
+                if (closed || channel != source)
+                    return;
+                copy(channel, snapshotEnd, end - snapshotEnd, target);
+                target.force(false);
+                target.close();
+
+                // The current file stays open until the compacted one has replaced it and been opened, so that the store
+                // can go on with it if either step fails (e.g., the file can't be replaced while it is open on Windows)
+                FileChannel previous = channel;
+                MappedByteBuffer previousMapped = mapped;
+                Map<String, Long> previousIndex = new HashMap<>(index);
+                long previousEnd = end;
+                long previousLiveBytes = liveBytes;
+                long previousDeadBytes = deadBytes;
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                try {
+                    open();
+                } catch (IOException e) {
+                    channel = previous;
+                    mapped = previousMapped;
+                    index.clear();
+                    index.putAll(previousIndex);
+                    end = previousEnd;
+                    liveBytes = previousLiveBytes;
+                    deadBytes = previousDeadBytes;
+                    throw e;
+                }
+                previous.close();
+            }
+        } catch (IOException e) {
+            // Leave the current file in place; compaction is attempted again after the next put
+        } finally {
+            try {
+                if (target != null)
+                    target.close();
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+            }
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Appends from two processes would corrupt the file, so only one may have it open at a time
+        try {
+            if (channel.tryLock() == null)
+                throw new IOException("Definition store is in use: " + path);
+        } catch (IOException | OverlappingFileLockException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Definition store is in use: " + path, e);
+        }
+        mapped = null;
+        index.clear();
+        liveBytes = deadBytes = 0;
+
+        if (channel.size() < HEADER_SIZE) {
+            channel.truncate(0);
+            writeHeader(channel);
+            end = HEADER_SIZE;
+            return;
+        }
+
+        end = channel.size();
+        ByteBuffer buffer = map(end);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not a definition store: " + path);
+        }
+
+        // Rebuild the index, stopping at the first record that is incomplete or corrupted
+        long position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= end) {
+            int length = buffer.getInt((int) position);
+            if (length < 0 || position + RECORD_HEADER_SIZE + length > end)
+                break;
+            byte[] payload = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position((int) position + RECORD_HEADER_SIZE);
+            view.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != buffer.getInt((int) position + 4))
+                break;
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            String word = in.readUTF();
+            String databaseName = in.readUTF();
+            indexRecord(key(word, databaseName), position, RECORD_HEADER_SIZE + length);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        if (position < end) {
+            channel.truncate(position);
+            end = position;
+            mapped = null;
+        }
+    }
+
+    private void indexRecord(String key, long offset, int size) {
+        Long previous = index.put(key, offset << 32 | size);
+        if (previous != null) {
+            int previousSize = (int) (long) previous;
+            liveBytes -= previousSize;
+            deadBytes += previousSize;
+        }
+        liveBytes += size;
+    }
+
+    private byte[] readRecord(long offset) throws IOException {
+        ByteBuffer buffer = map(end).duplicate();
+        int length = buffer.getInt((int) offset);
+        byte[] payload = new byte[length];
+        buffer.position((int) offset + RECORD_HEADER_SIZE);
+        buffer.get(payload);
+        return payload;
+    }
+
+    /** Returns a read-only mapping of the data file covering at least the given number of bytes, remapping the file if
+     * records have been appended beyond the current mapping.
+     */
+    private MappedByteBuffer map(long limit) throws IOException {
+        if (mapped == null || mapped.capacity() < limit)
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        return mapped;
+    }
+
+    private static void writeHeader(FileChannel target) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining())
+            target.write(header, HEADER_SIZE - header.remaining());
+        target.position(HEADER_SIZE);
+    }
+
+    private static void copy(FileChannel source, long position, long count, FileChannel target) throws IOException {
+        long copied = 0;
+        while (copied < count)
+            copied += source.transferTo(position + copied, count - copied, target);
+    }
+
+    private static String key(String word, String databaseName) {
+        return databaseName + '\u0000' + word;
+    }
+
+    /** Definitions read back from the store, together with the time at which they were stored.
+     */
+    public static class Entry {
+        private final Collection<Definition> definitions;
+        private final long storedAt;
+
+        private Entry(Collection<Definition> definitions, long storedAt) {
+            this.definitions = definitions;
+            this.storedAt = storedAt;
+        }
+
+        public Collection<Definition> getDefinitions() {
+            return definitions;
+        }
+
+        public long getStoredAt() {
+            return storedAt;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The databases and strategies of a server, saved so that the next run can show them before the server has been
+ * asked again. A snapshot is only a hint: it should be replaced by a fresh one once the server has answered.
+ */
+public class MetadataSnapshot {
+
+    private static final int MAGIC = 0x444D4554; // "DMET"
+    private static final int VERSION = 1;
+
+    private final List<Database> databases;
+    private final List<MatchingStrategy> strategies;
+
+    public MetadataSnapshot(Collection<Database> databases, Collection<MatchingStrategy> strategies) {
+        this.databases = Collections.unmodifiableList(new ArrayList<>(databases));
+        this.strategies = Collections.unmodifiableList(new ArrayList<>(strategies));
+    }
+
+    /** Reads a snapshot saved by an earlier run.
+     *
+     * @param path Location of the snapshot file.
+     * @return The snapshot, or null if there is none or it can't be read.
+     */
+    public static MetadataSnapshot load(Path path) {
+        if (!Files.isRegularFile(path))
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+            List<Database> databases = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--)
+                databases.add(new Database(in.readUTF(), in.readUTF()));
+            List<MatchingStrategy> strategies = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--)
+                strategies.add(new MatchingStrategy(in.readUTF(), in.readUTF()));
+            return new MetadataSnapshot(databases, strategies);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Writes the snapshot, replacing any earlier one at once so that a concurrent load never sees half of it.
+     *
+     * @param path Location of the snapshot file.
+     * @throws IOException If the file can't be written.
+     */
+    public void save(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(databases.size());
+            for (Database database : databases) {
+                out.writeUTF(database.getName());
+                out.writeUTF(text(database.getDescription()));
+            }
+            out.writeInt(strategies.size());
+            for (MatchingStrategy strategy : strategies) {
+                out.writeUTF(strategy.getName());
+                out.writeUTF(text(strategy.getDescription()));
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public List<Database> getDatabases() {
+        return databases;
+    }
+
+    public List<MatchingStrategy> getStrategies() {
+        return strategies;
+    }
+
+    /** Checks whether another snapshot lists the same databases and strategies, with the same descriptions, in the
+     * same order.
+     */
+    public boolean sameAs(MetadataSnapshot other) {
+        if (other == null || other.databases.size() != databases.size() || other.strategies.size() != strategies.size())
+            return false;
+        for (int i = 0; i < databases.size(); i++) {
+            Database a = databases.get(i), b = other.databases.get(i);
+            if (!a.getName().equals(b.getName()) || !text(a.getDescription()).equals(text(b.getDescription())))
+                return false;
+        }
+        for (int i = 0; i < strategies.size(); i++) {
+            MatchingStrategy a = strategies.get(i), b = other.strategies.get(i);
+            if (!a.getName().equals(b.getName()) || !text(a.getDescription()).equals(text(b.getDescription())))
+                return false;
+        }
+        return true;
+    }
+
+    private static String text(String description) {
+        return description != null ? description : "";
+    }
+}
@@ -0,0 +1,143 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DefinitionListener;
+import ca.ubc.cs317.dict.net.DictionaryClient;
+
+import java.util.*;
+
+/**
+ * DictionaryClient that answers MATCH requests for a longer version of a recently matched word by filtering the earlier
+ * result, instead of asking the server again. When a user types "hou" and then "hous", every 'prefix' match of "hous"
+ * is also a match of "hou", so the second result is computed locally; the same holds for 'substring' matches.
+ * <p>
+ * The last result retrieved from the server is kept for each (database, strategy) pair. It is not used for strategies
+ * whose results don't shrink as the word grows, for the '!' database (whose first matching database may change as the
+ * word grows), or if it has as many matches as the truncation limit, since the server may have left some out.
+ */
+public class NarrowingDictionaryClient implements DictionaryClient {
+
+    public static final int DEFAULT_TRUNCATION_LIMIT = DictionaryClient.MATCH_TRUNCATION_LIMIT;
+
+    private final DictionaryClient client;
+    private final int truncationLimit;
+    private final Map<String, Base> bases = new HashMap<>();
+
+    private long narrowed = 0;
+    private long forwarded = 0;
+
+    /** Wraps a client, narrowing match results locally whenever possible.
+     *
+     * @param client The client used for requests that can't be answered locally.
+     * @param truncationLimit Number of matches at which a result is assumed to have been truncated by the server.
+     */
+    public NarrowingDictionaryClient(DictionaryClient client, int truncationLimit) {
+        this.client = client;
+        this.truncationLimit = truncationLimit;
+    }
+
+    public NarrowingDictionaryClient(DictionaryClient client) {
+        this(client, DEFAULT_TRUNCATION_LIMIT);
+    }
+
+    @Override
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        String trimmed = word.trim();
+        boolean monotone = isMonotone(strategy.getName()) && !database.getName().equals("!");
+        if (!monotone || trimmed.isEmpty())
+            return client.getMatchList(word, strategy, database);
+
+        String key = database.getName() + '\u0000' + strategy.getName();
+        String lower = trimmed.toLowerCase(Locale.ROOT);
+        Base base;
+        synchronized (this) {
+            base = bases.get(key);
+        }
+        if (base != null && subsumes(strategy.getName(), base.word, lower)) {
+            Set<String> matches = new LinkedHashSet<>();
+            for (String match : base.matches) {
+                if (matches(strategy.getName(), match.toLowerCase(Locale.ROOT), lower))
+                    matches.add(match);
+            }
+            synchronized (this) {
+                narrowed++;
+            }
+            return matches;
+        }
+
+        Set<String> matches = client.getMatchList(word, strategy, database);
+        synchronized (this) {
+            forwarded++;
+            if (matches.size() < truncationLimit)
+                bases.put(key, new Base(lower, new ArrayList<>(matches)));
+        }
+        return matches;
+    }
+
+    @Override
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        return client.getDefinitions(word, database);
+    }
+
+    @Override
+    public void streamDefinitions(String word, Database database, DefinitionListener listener) throws DictConnectionException {
+        client.streamDefinitions(word, database, listener);
+    }
+
+    @Override
+    public Collection<Database> getDatabaseList() throws DictConnectionException {
+        return client.getDatabaseList();
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        return client.getStrategyList();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            bases.clear();
+        }
+        client.close();
+    }
+
+    /** Returns the number of match requests answered by narrowing an earlier result.
+     */
+    public synchronized long getNarrowedCount() {
+        return narrowed;
+    }
+
+    /** Returns the number of match requests that had to be sent to the wrapped client.
+     */
+    public synchronized long getForwardedCount() {
+        return forwarded;
+    }
+
+    private static boolean isMonotone(String strategy) {
+        return strategy.equals("prefix") || strategy.equals("substring");
+    }
+
+    /** Checks whether every match of the new word is also a match of the base word, for the given strategy.
+     */
+    private static boolean subsumes(String strategy, String baseWord, String word) {
+        return strategy.equals("prefix") ? word.startsWith(baseWord) : word.contains(baseWord);
+    }
+
+    private static boolean matches(String strategy, String headword, String word) {
+        return strategy.equals("prefix") ? headword.startsWith(word) : headword.contains(word);
+    }
+
+    private static class Base {
+        private final String word;
+        private final List<String> matches;
+
+        private Base(String word, List<String> matches) {
+            this.word = word;
+            this.matches = matches;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ca.ubc.cs317.dict.cache;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DefinitionCollector;
+import ca.ubc.cs317.dict.net.DefinitionListener;
+import ca.ubc.cs317.dict.net.DictionaryClient;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * DictionaryClient that answers DEFINE requests from a DefinitionStore before going to the wrapped client, and stores
+ * every result it retrieves. Stored results older than the maximum age are refreshed from the server, but are still
+ * returned if the server can't be reached. Problems with the store itself never fail a lookup; the request simply goes
+ * to the server.
+ */
+public class PersistentDictionaryClient implements DictionaryClient {
+
+    public static final long DEFAULT_MAX_AGE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    private final DictionaryClient client;
+    private final DefinitionStore store;
+    private final long maxAgeMillis;
+
+    /** Wraps a client with a persistent store.
+     *
+     * @param client The client used for requests that can't be answered from the store.
+     * @param store The store used to keep definitions across runs. It is closed together with this client.
+     * @param maxAgeMillis Time after which stored definitions are retrieved again from the server.
+     */
+    public PersistentDictionaryClient(DictionaryClient client, DefinitionStore store, long maxAgeMillis) {
+        this.client = client;
+        this.store = store;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public PersistentDictionaryClient(DictionaryClient client, DefinitionStore store) {
+        this(client, store, DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    @Override
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        DefinitionCollector collector = new DefinitionCollector();
+        streamDefinitions(word, database, collector);
+        return collector.getDefinitions();
+    }
+
+    @Override
+    public void streamDefinitions(String word, Database database, DefinitionListener listener) throws DictConnectionException {
+        String trimmed = word.trim();
+        if (trimmed.isEmpty()) {
+            client.streamDefinitions(word, database, listener);
+            return;
+        }
+
+        DefinitionStore.Entry stored = null;
+        try {
+            stored = store.get(trimmed, database.getName());
+        } catch (IOException e) {
+            // Treat an unreadable record as missing
+        }
+        if (stored != null && System.currentTimeMillis() - stored.getStoredAt() <= maxAgeMillis) {
+            replay(stored, listener);
+            return;
+        }
+
+        DefinitionCollector collector = new DefinitionCollector(listener);
+        try {
+            client.streamDefinitions(word, database, collector);
+        } catch (DictConnectionException e) {
+            // Better stale than nothing while offline, unless part of the fresh reply was already handed out
+            if (stored != null && collector.isEmpty()) {
+                replay(stored, listener);
+                return;
+            }
+            throw e;
+        }
+
+        try {
+            store.put(trimmed, database.getName(), collector.getDefinitions());
+        } catch (IOException e) {
+            // The result is still returned; it will just be retrieved from the server again next time
+        }
+    }
+
+    @Override
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        return client.getMatchList(word, strategy, database);
+    }
+
+    @Override
+    public Collection<Database> getDatabaseList() throws DictConnectionException {
+        return client.getDatabaseList();
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        return client.getStrategyList();
+    }
+
+    @Override
+    public void close() {
+        store.close();
+        client.close();
+    }
+
+    private static void replay(DefinitionStore.Entry stored, DefinitionListener listener) {
+        for (Definition definition : stored.getDefinitions())
+            listener.definitionReceived(definition);
+    }
+
+    public DefinitionStore getStore() {
+        return store;
+    }
+}
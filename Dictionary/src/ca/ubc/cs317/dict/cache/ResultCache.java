@@ -0,0 +1,118 @@
+package ca.ubc.cs317.dict.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded cache of lookup results. Entries are evicted in least-recently-used order once either the number of
+ * entries or their estimated size in bytes goes over its limit, and are discarded when they are read after their time
+ * to live has passed. Empty results (e.g., a 552 reply) may be given a different time to live than regular ones.
+ */
+public class ResultCache<K, V> {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long expirations = 0;
+
+    /** Creates an empty cache.
+     *
+     * @param maxEntries Maximum number of entries kept in the cache
+     * @param maxBytes Maximum estimated size of all entries kept in the cache
+     * @param ttlMillis Time after which a regular entry is no longer used
+     * @param negativeTtlMillis Time after which an entry for an empty result is no longer used
+     */
+    public ResultCache(int maxEntries, long maxBytes, long ttlMillis, long negativeTtlMillis) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    /** Retrieves the value cached for a key, if it is present and hasn't expired.
+     *
+     * @param key The key being looked up.
+     * @return The cached value, or null if there is none.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            remove(key, entry);
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /** Stores a value in the cache, evicting the least recently used entries if the cache goes over its limits.
+     *
+     * @param key The key under which the value is stored.
+     * @param value The value being stored.
+     * @param size Estimated size of the value, in bytes.
+     * @param negative Whether the value represents an empty result.
+     */
+    public synchronized void put(K key, V value, long size, boolean negative) {
+        if (size > maxBytes)
+            return;
+        Entry<V> previous = entries.remove(key);
+        if (previous != null)
+            bytes -= previous.size;
+
+        long ttl = negative ? negativeTtlMillis : ttlMillis;
+        entries.put(key, new Entry<>(value, size, System.currentTimeMillis() + ttl));
+        bytes += size;
+
+        Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = it.next();
+            it.remove();
+            bytes -= eldest.getValue().size;
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /** Returns a snapshot of the cache counters.
+     *
+     * @return The current statistics of this cache.
+     */
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, expirations, entries.size(), bytes);
+    }
+
+    private void remove(K key, Entry<V> entry) {
+        entries.remove(key);
+        bytes -= entry.size;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long size;
+        private final long expiresAt;
+
+        private Entry(V value, long size, long expiresAt) {
+            this.value = value;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ca.ubc.cs317.dict.exception;
+
+/**
+ * Thrown when a DICT server refuses a request it can't carry out, e.g., because of an invalid database (550) or strategy
+ * (551), or a syntax error (500, 501). The whole reply has been read, so the session is still usable for other requests.
+ */
+public class DictRequestRejectedException extends DictConnectionException {
+
+    private final int statusCode;
+
+    public DictRequestRejectedException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
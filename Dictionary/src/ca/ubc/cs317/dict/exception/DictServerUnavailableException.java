@@ -0,0 +1,19 @@
+package ca.ubc.cs317.dict.exception;
+
+/**
+ * Thrown when a DICT server refuses a request because it is temporarily unavailable (420) or shutting down (421). The
+ * request itself was valid, so it may succeed on another server or at a later time.
+ */
+public class DictServerUnavailableException extends DictConnectionException {
+
+    private final int statusCode;
+
+    public DictServerUnavailableException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
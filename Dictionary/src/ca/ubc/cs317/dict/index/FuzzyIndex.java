@@ -0,0 +1,283 @@
+package ca.ubc.cs317.dict.index;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index of the headwords of a single database for approximate matching: a trie of the headwords, walked with one row of
+ * the Levenshtein distance matrix per level so that every headword within a given distance of a word is found while
+ * abandoning each branch as soon as no word below it can be close enough, and hash indexes of the Soundex and Metaphone
+ * keys of every headword. It answers the 'lev', 'soundex' and 'metaphone'
+ * strategies locally, and ranks corrections for a word that has no definition.
+ * <p>
+ * Like a PrefixIndex, the index may only know part of the database; it is complete once the full word list has been
+ * loaded. Headwords are compared case-insensitively.
+ */
+public class FuzzyIndex {
+
+    public static final String LEVENSHTEIN = "lev";
+    public static final String SOUNDEX = "soundex";
+    public static final String METAPHONE = "metaphone";
+
+    // Maximum distance of a 'lev' match, as in dictd
+    public static final int LEVENSHTEIN_DISTANCE = 1;
+    // Maximum distance of a correction found by spelling alone
+    private static final int SUGGESTION_DISTANCE = 2;
+    // Corrections found by sound alone may be further away in spelling, but not this far
+    private static final double MAX_SCORE = 3.5;
+
+    private final Map<String, String> headwords = new HashMap<>();
+    private final Map<String, List<String>> soundexKeys = new HashMap<>();
+    private final Map<String, List<String>> metaphoneKeys = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TrieNode root = new TrieNode();
+    private boolean complete = false;
+
+    /** Checks whether a strategy is one of those answered by this index.
+     *
+     * @param strategy Name of a matching strategy.
+     * @return true for 'lev', 'soundex' and 'metaphone'.
+     */
+    public static boolean supports(String strategy) {
+        return LEVENSHTEIN.equals(strategy) || SOUNDEX.equals(strategy) || METAPHONE.equals(strategy);
+    }
+
+    /** Adds every word of the database and marks the index as complete.
+     *
+     * @param words All headwords of the database.
+     */
+    public void load(Collection<String> words) {
+        lock.writeLock().lock();
+        try {
+            for (String word : words)
+                insert(word);
+            complete = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Adds headwords learned from the server, e.g., in a MATCH or DEFINE reply.
+     *
+     * @param words Headwords of the database.
+     */
+    public void addAll(Collection<String> words) {
+        lock.writeLock().lock();
+        try {
+            for (String word : words)
+                insert(word);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isComplete() {
+        lock.readLock().lock();
+        try {
+            return complete;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getWordCount() {
+        lock.readLock().lock();
+        try {
+            return headwords.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Returns the known headwords that match a word.
+     *
+     * @param word The word to be matched.
+     * @param strategy 'lev' for headwords within Levenshtein distance 1, 'soundex' or 'metaphone' for headwords with
+     *                 the same phonetic key.
+     * @return The matching headwords, in case-insensitive alphabetical order, or null if the strategy is not supported.
+     */
+    public Set<String> match(String word, String strategy) {
+        String key = word.toLowerCase(Locale.ROOT);
+        List<String> keys = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            switch (strategy) {
+                case LEVENSHTEIN:
+                    keys.addAll(withinDistance(key, LEVENSHTEIN_DISTANCE).keySet());
+                    break;
+                case SOUNDEX:
+                    addAll(keys, soundexKeys.get(PhoneticKeys.soundex(key)));
+                    break;
+                case METAPHONE:
+                    addAll(keys, metaphoneKeys.get(PhoneticKeys.metaphone(key)));
+                    break;
+                default:
+                    return null;
+            }
+            Collections.sort(keys);
+            Set<String> matches = new LinkedHashSet<>();
+            for (String match : keys)
+                matches.add(headwords.get(match));
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Ranks the known headwords that are likely to be what was meant by a word that has no definition.
+     *
+     * @param word The word that was looked up.
+     * @param limit Maximum number of corrections.
+     * @return The corrections, best first.
+     */
+    public List<String> suggest(String word, int limit) {
+        return suggest(word, Collections.singletonList(this), limit);
+    }
+
+    /** Ranks corrections for a word across several indexes, e.g., those of all databases. Headwords within a small
+     * edit distance and headwords that sound the same are considered; each is scored by its edit distance, lowered
+     * when its Metaphone or Soundex key matches that of the word, and ties are broken alphabetically.
+     *
+     * @param word The word that was looked up.
+     * @param indexes The indexes to be searched.
+     * @param limit Maximum number of corrections.
+     * @return The corrections, best first, each listed once.
+     */
+    public static List<String> suggest(String word, Collection<FuzzyIndex> indexes, int limit) {
+        String key = word.trim().toLowerCase(Locale.ROOT);
+        String soundex = PhoneticKeys.soundex(key);
+        String metaphone = PhoneticKeys.metaphone(key);
+
+        final Map<String, Double> scores = new HashMap<>();
+        Map<String, String> originals = new HashMap<>();
+        for (FuzzyIndex index : indexes) {
+            index.lock.readLock().lock();
+            try {
+                Set<String> candidates = new HashSet<>(index.withinDistance(key, SUGGESTION_DISTANCE).keySet());
+                if (!soundex.isEmpty())
+                    addAll(candidates, index.soundexKeys.get(soundex));
+                if (!metaphone.isEmpty())
+                    addAll(candidates, index.metaphoneKeys.get(metaphone));
+
+                for (String candidate : candidates) {
+                    if (candidate.equals(key) || scores.containsKey(candidate))
+                        continue;
+                    double score = distance(key, candidate);
+                    if (!metaphone.isEmpty() && metaphone.equals(PhoneticKeys.metaphone(candidate)))
+                        score -= 0.6;
+                    if (!soundex.isEmpty() && soundex.equals(PhoneticKeys.soundex(candidate)))
+                        score -= 0.3;
+                    if (score <= MAX_SCORE) {
+                        scores.put(candidate, score);
+                        originals.put(candidate, index.headwords.get(candidate));
+                    }
+                }
+            } finally {
+                index.lock.readLock().unlock();
+            }
+        }
+
+        List<String> ranked = new ArrayList<>(scores.keySet());
+        Collections.sort(ranked, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int byScore = Double.compare(scores.get(a), scores.get(b));
+                return byScore != 0 ? byScore : a.compareTo(b);
+            }
+        });
+        List<String> suggestions = new ArrayList<>();
+        for (String candidate : ranked.subList(0, Math.min(limit, ranked.size())))
+            suggestions.add(originals.get(candidate));
+        return suggestions;
+    }
+
+    /** Computes the edit distance between two strings used to rank corrections: the number of single-character
+     * insertions, deletions and substitutions, and swaps of adjacent characters, needed to turn one into the other.
+     * Swapped letters are among the most common typing mistakes, so unlike in a 'lev' match they only count once.
+     */
+    static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++)
+            d[i][0] = i;
+        for (int j = 0; j <= b.length(); j++)
+            d[0][j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                d[i][j] = Math.min(substitution, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1))
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    private void insert(String word) {
+        String key = word.toLowerCase(Locale.ROOT);
+        if (key.isEmpty() || headwords.containsKey(key))
+            return;
+        headwords.put(key, word);
+        index(soundexKeys, PhoneticKeys.soundex(key), key);
+        index(metaphoneKeys, PhoneticKeys.metaphone(key), key);
+
+        TrieNode node = root;
+        for (int i = 0; i < key.length(); i++) {
+            TrieNode child = node.child(key.charAt(i));
+            node = child != null ? child : node.addChild(key.charAt(i));
+        }
+        // Headwords differing only in case share a key, so a node holds a single headword here
+        node.headwords = new String[] { word };
+    }
+
+    /** Finds every headword within a maximum distance of a word.
+     *
+     * @return A map from each matching key to its distance.
+     */
+    private Map<String, Integer> withinDistance(String key, int maxDistance) {
+        Map<String, Integer> matches = new HashMap<>();
+        int[] row = new int[key.length() + 1];
+        for (int j = 0; j < row.length; j++)
+            row[j] = j;
+        for (int i = 0; i < root.keys.length; i++)
+            walk(root.children[i], root.keys[i], key, row, maxDistance, matches);
+        return matches;
+    }
+
+    /** Computes the row of the distance matrix for the prefix ending at a trie node from the row of its parent, and
+     * descends into the children only if some cell of the row is still within the maximum distance: every later row
+     * is at least as large as the smallest cell of this one.
+     */
+    private static void walk(TrieNode node, char c, String key, int[] previous, int maxDistance,
+                             Map<String, Integer> matches) {
+        int[] row = new int[previous.length];
+        row[0] = previous[0] + 1;
+        int min = row[0];
+        for (int j = 1; j < row.length; j++) {
+            int substitution = previous[j - 1] + (key.charAt(j - 1) == c ? 0 : 1);
+            row[j] = Math.min(substitution, Math.min(previous[j], row[j - 1]) + 1);
+            min = Math.min(min, row[j]);
+        }
+        if (node.headwords != null && row[row.length - 1] <= maxDistance)
+            matches.put(node.headwords[0].toLowerCase(Locale.ROOT), row[row.length - 1]);
+        if (min <= maxDistance)
+            for (int i = 0; i < node.keys.length; i++)
+                walk(node.children[i], node.keys[i], key, row, maxDistance, matches);
+    }
+
+    private static void index(Map<String, List<String>> keys, String phoneticKey, String key) {
+        if (phoneticKey.isEmpty())
+            return;
+        List<String> words = keys.get(phoneticKey);
+        if (words == null) {
+            words = new ArrayList<>(2);
+            keys.put(phoneticKey, words);
+        }
+        words.add(key);
+    }
+
+    private static void addAll(Collection<String> target, List<String> words) {
+        if (words != null)
+            target.addAll(words);
+    }
+}
@@ -0,0 +1,229 @@
+package ca.ubc.cs317.dict.index;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DefinitionListener;
+import ca.ubc.cs317.dict.net.DictionaryClient;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * DictionaryClient that keeps a PrefixIndex of headwords for every database, filled from the MATCH replies it forwards
+ * and from word lists loaded in bulk, and answers 'prefix' and 'exact' matches from it whenever the index is known to
+ * be complete for the requested word. All other requests, including matches on the special databases '*' and '!', go
+ * to the wrapped client.
+ * <p>
+ * The same headwords, and those of the definitions it returns, are also kept in a FuzzyIndex per database. Matches on
+ * '*' and '!' don't say which database each headword came from, so they go into a separate fuzzy index shared by all
+ * databases. The 'lev', 'soundex' and 'metaphone' strategies are answered from these indexes when the server doesn't
+ * offer them, or when the word list of the database has been loaded; they are added to the strategy list if the server
+ * lacks them. The fuzzy indexes also provide corrections for a word that has no definition without asking the server.
+ */
+public class IndexedDictionaryClient implements DictionaryClient {
+
+    private static final MatchingStrategy[] LOCAL_STRATEGIES = {
+            new MatchingStrategy(FuzzyIndex.LEVENSHTEIN, "Match headwords within Levenshtein distance one"),
+            new MatchingStrategy(FuzzyIndex.SOUNDEX, "Match using SOUNDEX algorithm"),
+            new MatchingStrategy(FuzzyIndex.METAPHONE, "Match using Metaphone algorithm"),
+    };
+
+    private final DictionaryClient client;
+    private final ConcurrentMap<String, PrefixIndex> indexes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, FuzzyIndex> fuzzyIndexes = new ConcurrentHashMap<>();
+    // Headwords from matches on '*' and '!', whose database is unknown
+    private final FuzzyIndex anyDatabaseIndex = new FuzzyIndex();
+    // Names of the strategies offered by the server, retrieved when first needed
+    private volatile Set<String> serverStrategies;
+
+    public IndexedDictionaryClient(DictionaryClient client) {
+        this.client = client;
+    }
+
+    /** Loads the full list of headwords of a database, so that every prefix and exact match on it can be answered
+     * locally.
+     *
+     * @param database The database the headwords belong to.
+     * @param headwords All headwords in the database.
+     */
+    public void loadWordList(Database database, Collection<String> headwords) {
+        getIndex(database).load(headwords);
+        getFuzzyIndex(database).load(headwords);
+    }
+
+    @Override
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        String trimmed = word.trim();
+        if (trimmed.isEmpty())
+            return client.getMatchList(word, strategy, database);
+
+        if (FuzzyIndex.supports(strategy.getName())) {
+            Set<String> matches = fuzzyMatch(trimmed, strategy.getName(), database);
+            if (matches != null)
+                return matches;
+        }
+        if (isSpecial(database)) {
+            Set<String> matches = client.getMatchList(word, strategy, database);
+            anyDatabaseIndex.addAll(matches);
+            return matches;
+        }
+
+        PrefixIndex index = getIndex(database);
+        Set<String> matches = index.match(trimmed, strategy.getName());
+        if (matches != null)
+            return matches;
+
+        matches = client.getMatchList(word, strategy, database);
+        index.addMatches(trimmed, strategy.getName(), matches);
+        getFuzzyIndex(database).addAll(matches);
+        return matches;
+    }
+
+    @Override
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        Collection<Definition> definitions = client.getDefinitions(word, database);
+        for (Definition definition : definitions)
+            addHeadword(definition);
+        return definitions;
+    }
+
+    @Override
+    public void streamDefinitions(String word, Database database, final DefinitionListener listener) throws DictConnectionException {
+        client.streamDefinitions(word, database, new DefinitionListener() {
+            @Override
+            public void definitionReceived(Definition definition) {
+                addHeadword(definition);
+                listener.definitionReceived(definition);
+            }
+        });
+    }
+
+    @Override
+    public Collection<Database> getDatabaseList() throws DictConnectionException {
+        return client.getDatabaseList();
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        Set<MatchingStrategy> strategies = new LinkedHashSet<>(client.getStrategyList());
+        Set<String> names = new HashSet<>();
+        for (MatchingStrategy strategy : strategies)
+            names.add(strategy.getName());
+        serverStrategies = names;
+
+        for (MatchingStrategy strategy : LOCAL_STRATEGIES)
+            if (!names.contains(strategy.getName()))
+                strategies.add(strategy);
+        return strategies;
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    /** Suggests corrections for a word that has no definition, from the headwords known for a database, ranked by
+     * spelling and sound. No request is sent to the server.
+     *
+     * @param word The word that was looked up.
+     * @param database The database that was searched; '*' and '!' search the headwords of every database, including
+     *                 those learned from matches on '*' and '!'.
+     * @param limit Maximum number of corrections.
+     * @return The corrections, best first; empty if no known headword is close enough.
+     */
+    public List<String> suggest(String word, Database database, int limit) {
+        if (!isSpecial(database))
+            return getFuzzyIndex(database).suggest(word, limit);
+        List<FuzzyIndex> searched = new ArrayList<>(fuzzyIndexes.values());
+        searched.add(anyDatabaseIndex);
+        return FuzzyIndex.suggest(word, searched, limit);
+    }
+
+    /** Returns the index kept for a database, creating an empty one if there is none yet.
+     *
+     * @param database A regular database (not '*' or '!').
+     * @return The index of headwords for the database.
+     */
+    public PrefixIndex getIndex(Database database) {
+        PrefixIndex index = indexes.get(database.getName());
+        if (index == null) {
+            PrefixIndex created = new PrefixIndex();
+            index = indexes.putIfAbsent(database.getName(), created);
+            if (index == null)
+                index = created;
+        }
+        return index;
+    }
+
+    /** Returns the fuzzy index kept for a database, creating an empty one if there is none yet.
+     *
+     * @param database A regular database (not '*' or '!').
+     * @return The index used for approximate matches on the database.
+     */
+    public FuzzyIndex getFuzzyIndex(Database database) {
+        FuzzyIndex index = fuzzyIndexes.get(database.getName());
+        if (index == null) {
+            FuzzyIndex created = new FuzzyIndex();
+            index = fuzzyIndexes.putIfAbsent(database.getName(), created);
+            if (index == null)
+                index = created;
+        }
+        return index;
+    }
+
+    /** Estimates the heap space used by the indexes of all databases.
+     *
+     * @return The estimated size of all indexes, in bytes.
+     */
+    public long getMemoryFootprint() {
+        long size = 0;
+        for (PrefixIndex index : indexes.values())
+            size += index.getMemoryFootprint();
+        return size;
+    }
+
+    /** Answers a 'lev', 'soundex' or 'metaphone' match locally, if the server can't answer it or the index knows every
+     * headword of the database.
+     *
+     * @return The matching headwords, or null if the request should go to the server.
+     */
+    private Set<String> fuzzyMatch(String word, String strategy, Database database) throws DictConnectionException {
+        boolean local = !getServerStrategies().contains(strategy);
+        if (!isSpecial(database)) {
+            FuzzyIndex index = getFuzzyIndex(database);
+            return local || index.isComplete() ? index.match(word, strategy) : null;
+        }
+        if (!local)
+            return null;
+
+        // All databases: every match in any index; any database: the matches of the first index that has some, trying
+        // the headwords whose database is unknown last
+        List<FuzzyIndex> searched = new ArrayList<>(fuzzyIndexes.values());
+        searched.add(anyDatabaseIndex);
+        Set<String> matches = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (FuzzyIndex index : searched) {
+            matches.addAll(index.match(word, strategy));
+            if (!matches.isEmpty() && database.getName().equals("!"))
+                break;
+        }
+        return matches;
+    }
+
+    private Set<String> getServerStrategies() throws DictConnectionException {
+        if (serverStrategies == null)
+            getStrategyList();
+        return serverStrategies;
+    }
+
+    private void addHeadword(Definition definition) {
+        if (definition.getDatabase() != null && !isSpecial(definition.getDatabase()))
+            getFuzzyIndex(definition.getDatabase()).addAll(Collections.singleton(definition.getWord()));
+    }
+
+    private static boolean isSpecial(Database database) {
+        return database.getName().equals("*") || database.getName().equals("!");
+    }
+}
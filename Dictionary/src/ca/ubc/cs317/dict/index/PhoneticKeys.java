@@ -0,0 +1,177 @@
+package ca.ubc.cs317.dict.index;
+
+import java.util.Locale;
+
+/**
+ * Phonetic keys of English words, used to find headwords that sound like a misspelled word. Only the letters A to Z
+ * are considered; any other character is ignored.
+ */
+public class PhoneticKeys {
+
+    // Soundex digit of each letter A-Z; '0' for letters that are not coded
+    private static final String SOUNDEX_CODES = "01230120022455012623010202";
+
+    /** Computes the American Soundex code of a word: its first letter followed by three digits coding the consonants
+     * that follow, e.g., "R163" for both "Robert" and "Rupert".
+     *
+     * @param word The word to be coded.
+     * @return The code, or an empty string if the word has no letters.
+     */
+    public static String soundex(String word) {
+        String letters = letters(word);
+        if (letters.isEmpty())
+            return "";
+
+        StringBuilder code = new StringBuilder(4);
+        code.append(letters.charAt(0));
+        char previous = soundexCode(letters.charAt(0));
+        for (int i = 1; i < letters.length() && code.length() < 4; i++) {
+            char c = letters.charAt(i);
+            char digit = soundexCode(c);
+            if (digit != '0' && digit != previous)
+                code.append(digit);
+            // H and W don't separate consonants with the same code, vowels do
+            if (c != 'H' && c != 'W')
+                previous = digit;
+        }
+        while (code.length() < 4)
+            code.append('0');
+        return code.toString();
+    }
+
+    /** Computes the Metaphone key of a word (Lawrence Philips, 1990), which codes how the word is pronounced using
+     * 16 consonant sounds, '0' standing for "th" and 'X' for "sh". Vowels are only kept at the start of the word.
+     *
+     * @param word The word to be coded.
+     * @return The key, or an empty string if the word has no letters.
+     */
+    public static String metaphone(String word) {
+        String letters = letters(word);
+        if (letters.isEmpty())
+            return "";
+
+        // Initial letter exceptions
+        if (letters.startsWith("KN") || letters.startsWith("GN") || letters.startsWith("PN")
+                || letters.startsWith("AE") || letters.startsWith("WR"))
+            letters = letters.substring(1);
+        else if (letters.charAt(0) == 'X')
+            letters = "S" + letters.substring(1);
+        else if (letters.startsWith("WH"))
+            letters = "W" + letters.substring(2);
+
+        StringBuilder key = new StringBuilder();
+        int length = letters.length();
+        for (int i = 0; i < length; i++) {
+            char c = letters.charAt(i);
+            // Double letters sound like one, except for C
+            if (c != 'C' && i > 0 && letters.charAt(i - 1) == c)
+                continue;
+
+            char next = i + 1 < length ? letters.charAt(i + 1) : 0;
+            char afterNext = i + 2 < length ? letters.charAt(i + 2) : 0;
+            char previous = i > 0 ? letters.charAt(i - 1) : 0;
+
+            switch (c) {
+                case 'A': case 'E': case 'I': case 'O': case 'U':
+                    if (i == 0)
+                        key.append(c);
+                    break;
+                case 'B':
+                    // Silent in a final MB, as in "dumb"
+                    if (!(previous == 'M' && i == length - 1))
+                        key.append('B');
+                    break;
+                case 'C':
+                    if (next == 'I' && afterNext == 'A' || next == 'H' && previous != 'S')
+                        key.append('X');
+                    else if (next == 'I' || next == 'E' || next == 'Y') {
+                        if (previous != 'S')
+                            key.append('S');
+                    } else
+                        key.append('K');
+                    break;
+                case 'D':
+                    if (next == 'G' && (afterNext == 'E' || afterNext == 'Y' || afterNext == 'I')) {
+                        key.append('J');
+                        i++;
+                    } else
+                        key.append('T');
+                    break;
+                case 'G':
+                    if (next == 'H' && !(i + 2 >= length || isVowel(afterNext)))
+                        break; // Silent in "night"
+                    if (next == 'N' && (i + 2 == length || letters.startsWith("ED", i + 2) && i + 4 == length))
+                        break; // Silent in "sign", "signed"
+                    if ((next == 'I' || next == 'E' || next == 'Y') && previous != 'G')
+                        key.append('J');
+                    else
+                        key.append('K');
+                    break;
+                case 'H':
+                    if (isVowel(next) && "CSPTG".indexOf(previous) < 0)
+                        key.append('H');
+                    break;
+                case 'K':
+                    if (previous != 'C')
+                        key.append('K');
+                    break;
+                case 'P':
+                    key.append(next == 'H' ? 'F' : 'P');
+                    break;
+                case 'Q':
+                    key.append('K');
+                    break;
+                case 'S':
+                    if (next == 'H' || next == 'I' && (afterNext == 'O' || afterNext == 'A'))
+                        key.append('X');
+                    else
+                        key.append('S');
+                    break;
+                case 'T':
+                    if (next == 'I' && (afterNext == 'O' || afterNext == 'A'))
+                        key.append('X');
+                    else if (next == 'H')
+                        key.append('0');
+                    else if (!(next == 'C' && afterNext == 'H'))
+                        key.append('T');
+                    break;
+                case 'V':
+                    key.append('F');
+                    break;
+                case 'W': case 'Y':
+                    if (isVowel(next))
+                        key.append(c);
+                    break;
+                case 'X':
+                    key.append("KS");
+                    break;
+                case 'Z':
+                    key.append('S');
+                    break;
+                default:
+                    // F, J, L, M, N and R sound as written
+                    key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    private static String letters(String word) {
+        String upper = word.toUpperCase(Locale.ROOT);
+        StringBuilder letters = new StringBuilder(upper.length());
+        for (int i = 0; i < upper.length(); i++) {
+            char c = upper.charAt(i);
+            if (c >= 'A' && c <= 'Z')
+                letters.append(c);
+        }
+        return letters.toString();
+    }
+
+    private static char soundexCode(char letter) {
+        return SOUNDEX_CODES.charAt(letter - 'A');
+    }
+
+    private static boolean isVowel(char c) {
+        return c == 'A' || c == 'E' || c == 'I' || c == 'O' || c == 'U';
+    }
+}
@@ -0,0 +1,219 @@
+package ca.ubc.cs317.dict.index;
+
+import ca.ubc.cs317.dict.net.DictionaryClient;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Case-insensitive trie of the headwords of a single database, used to answer 'prefix' and 'exact' matches locally.
+ * <p>
+ * The trie usually only knows part of the database, so each node also records whether it is complete, i.e., whether
+ * every headword starting with that node's prefix is known. A bulk load of the full word list makes the root complete;
+ * a MATCH prefix reply from the server makes the node of its prefix complete, unless it is long enough to have been
+ * truncated by the server. A query can only be answered locally if one of the nodes on its path is complete.
+ */
+public class PrefixIndex {
+
+    public static final String PREFIX = "prefix";
+    public static final String EXACT = "exact";
+
+    // Approximate sizes used by getMemoryFootprint, assuming compressed references
+    private static final int OBJECT_HEADER = 16;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    private final int truncationLimit;
+    private final TrieNode root = new TrieNode();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int wordCount = 0;
+    private int nodeCount = 1;
+
+    /** Creates an empty index.
+     *
+     * @param truncationLimit Number of matches at which a MATCH reply is assumed to have been truncated by the server.
+     */
+    public PrefixIndex(int truncationLimit) {
+        this.truncationLimit = truncationLimit;
+    }
+
+    public PrefixIndex() {
+        this(DictionaryClient.MATCH_TRUNCATION_LIMIT);
+    }
+
+    /** Adds every word of the database and marks the index as complete, so that every prefix and exact match for this
+     * database can be answered locally from now on.
+     *
+     * @param headwords All headwords of the database.
+     */
+    public void load(Collection<String> headwords) {
+        lock.writeLock().lock();
+        try {
+            for (String headword : headwords)
+                insert(headword);
+            root.complete = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Records the reply to a MATCH request sent to the server.
+     *
+     * @param word The word pattern that was sent.
+     * @param strategy Name of the strategy that was used.
+     * @param matches The matches returned by the server.
+     */
+    public void addMatches(String word, String strategy, Collection<String> matches) {
+        lock.writeLock().lock();
+        try {
+            for (String match : matches)
+                insert(match);
+            // A prefix reply contains every headword under the prefix, unless the server cut it short; an exact reply
+            // says nothing about other words
+            if (PREFIX.equals(strategy) && matches.size() < truncationLimit)
+                nodeFor(word.toLowerCase(Locale.ROOT), true).complete = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Answers a match request locally, if the index knows enough to do so.
+     *
+     * @param word The word pattern to be matched.
+     * @param strategy Name of the strategy to be used; only 'prefix' and 'exact' are supported.
+     * @return The matching headwords, in case-insensitive alphabetical order, or null if the request can't be answered
+     * without asking the server.
+     */
+    public Set<String> match(String word, String strategy) {
+        if (!PREFIX.equals(strategy) && !EXACT.equals(strategy))
+            return null;
+
+        String key = word.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            TrieNode node = root;
+            boolean complete = root.complete;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+                complete |= node != null && node.complete;
+            }
+            if (!complete)
+                return null;
+
+            Set<String> matches = new LinkedHashSet<>();
+            if (node != null) {
+                if (PREFIX.equals(strategy))
+                    collect(node, matches);
+                else if (node.headwords != null)
+                    Collections.addAll(matches, node.headwords);
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isComplete() {
+        lock.readLock().lock();
+        try {
+            return root.complete;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getWordCount() {
+        lock.readLock().lock();
+        try {
+            return wordCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getNodeCount() {
+        lock.readLock().lock();
+        try {
+            return nodeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Returns every headword known to the index, in case-insensitive alphabetical order.
+     *
+     * @return A copy of the headwords in the index.
+     */
+    public List<String> getHeadwords() {
+        lock.readLock().lock();
+        try {
+            Set<String> headwords = new LinkedHashSet<>();
+            collect(root, headwords);
+            return new ArrayList<>(headwords);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Estimates the heap space used by the index, including its headword strings.
+     *
+     * @return The estimated size of the index, in bytes.
+     */
+    public long getMemoryFootprint() {
+        lock.readLock().lock();
+        try {
+            return footprint(root);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(String headword) {
+        TrieNode node = nodeFor(headword.toLowerCase(Locale.ROOT), true);
+        if (node.headwords == null) {
+            node.headwords = new String[] { headword };
+        } else {
+            for (String existing : node.headwords)
+                if (existing.equals(headword))
+                    return;
+            node.headwords = Arrays.copyOf(node.headwords, node.headwords.length + 1);
+            node.headwords[node.headwords.length - 1] = headword;
+        }
+        wordCount++;
+    }
+
+    private TrieNode nodeFor(String key, boolean create) {
+        TrieNode node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            TrieNode child = node.child(key.charAt(i));
+            if (child == null && create) {
+                child = node.addChild(key.charAt(i));
+                nodeCount++;
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    private static void collect(TrieNode node, Set<String> matches) {
+        if (node.headwords != null)
+            Collections.addAll(matches, node.headwords);
+        for (TrieNode child : node.children)
+            collect(child, matches);
+    }
+
+    private static long footprint(TrieNode node) {
+        long size = OBJECT_HEADER + 3 * REFERENCE + 2;
+        if (node.keys.length > 0)
+            size += ARRAY_HEADER + 2L * node.keys.length + ARRAY_HEADER + (long) REFERENCE * node.children.length;
+        if (node.headwords != null) {
+            size += ARRAY_HEADER + (long) REFERENCE * node.headwords.length;
+            for (String headword : node.headwords)
+                size += OBJECT_HEADER + 8 + ARRAY_HEADER + 2L * headword.length();
+        }
+        for (TrieNode child : node.children)
+            size += footprint(child);
+        return size;
+    }
+}
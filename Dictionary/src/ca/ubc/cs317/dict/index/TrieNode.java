@@ -0,0 +1,42 @@
+package ca.ubc.cs317.dict.index;
+
+import java.util.Arrays;
+
+/**
+ * Node of the headword tries kept by PrefixIndex and FuzzyIndex. Children are kept in two parallel arrays sorted by
+ * character, which is much smaller than a map for the few children most nodes have. Nodes are not thread-safe; each
+ * index guards its trie with its own lock.
+ */
+class TrieNode {
+
+    private static final char[] NO_KEYS = new char[0];
+    private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+
+    char[] keys = NO_KEYS;
+    TrieNode[] children = NO_CHILDREN;
+    // Headwords ending at this node, in their original case, or null if there are none
+    String[] headwords = null;
+    // Used by PrefixIndex: every headword starting with the prefix of this node is known
+    boolean complete = false;
+
+    TrieNode child(char c) {
+        int i = Arrays.binarySearch(keys, c);
+        return i >= 0 ? children[i] : null;
+    }
+
+    TrieNode addChild(char c) {
+        int i = -Arrays.binarySearch(keys, c) - 1;
+        char[] newKeys = new char[keys.length + 1];
+        TrieNode[] newChildren = new TrieNode[children.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, i);
+        System.arraycopy(children, 0, newChildren, 0, i);
+        System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+        System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+        TrieNode child = new TrieNode();
+        newKeys[i] = c;
+        newChildren[i] = child;
+        keys = newKeys;
+        children = newChildren;
+        return child;
+    }
+}
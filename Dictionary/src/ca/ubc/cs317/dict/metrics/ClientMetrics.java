@@ -0,0 +1,192 @@
+package ca.ubc.cs317.dict.metrics;
+
+import ca.ubc.cs317.dict.util.LatencyHistogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for the requests sent by DictionaryConnection: the latency and outcome of every
+ * command, the status codes received, and the bytes and reply lines read and written. Recording only updates
+ * lock-free counters, so metrics can stay enabled in production; all connections record into getDefault() unless
+ * told otherwise.
+ */
+public class ClientMetrics implements ClientMetricsMXBean {
+
+    public static final String CONNECT = "CONNECT";
+    public static final String DEFINE = "DEFINE";
+    public static final String MATCH = "MATCH";
+    public static final String DEFINE_BATCH = "DEFINE (batch)";
+    public static final String MATCH_BATCH = "MATCH (batch)";
+    public static final String SHOW_DB = "SHOW DB";
+    public static final String SHOW_STRAT = "SHOW STRAT";
+    public static final String STATUS = "STATUS";
+
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final ClientMetrics DEFAULT = new ClientMetrics();
+
+    private final ConcurrentMap<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+    private final AtomicLongArray statusCodes = new AtomicLongArray(600);
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder replyLines = new LongAdder();
+
+    /** Returns the metrics shared by all connections that aren't given their own.
+     */
+    public static ClientMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    /** Records the outcome of a command.
+     *
+     * @param command Name of the command, e.g., DEFINE.
+     * @param startNanos Value of System.nanoTime() when the command started.
+     * @param success Whether the command completed without an exception.
+     */
+    public void recordRequest(String command, long startNanos, boolean success) {
+        CommandMetrics metrics = getCommandMetrics(command);
+        metrics.latency.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        if (!success)
+            metrics.errors.increment();
+    }
+
+    public void recordStatus(int statusCode) {
+        if (statusCode >= 0 && statusCode < statusCodes.length())
+            statusCodes.incrementAndGet(statusCode);
+    }
+
+    public void recordBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    public void recordBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    public void recordReplyLine() {
+        replyLines.increment();
+    }
+
+    /** Returns the latency histogram of a command, in microseconds.
+     *
+     * @param command Name of the command.
+     * @return The live histogram, which keeps changing as requests are recorded.
+     */
+    public LatencyHistogram getLatencyHistogram(String command) {
+        return getCommandMetrics(command).latency;
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, CommandMetrics> entry : commands.entrySet())
+            counts.put(entry.getKey(), entry.getValue().latency.getTotalCount());
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, CommandMetrics> entry : commands.entrySet())
+            counts.put(entry.getKey(), entry.getValue().errors.sum());
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMicros() {
+        Map<String, Double> means = new TreeMap<>();
+        for (Map.Entry<String, CommandMetrics> entry : commands.entrySet())
+            means.put(entry.getKey(), entry.getValue().latency.getMean());
+        return means;
+    }
+
+    @Override
+    public Map<String, Long> getP50LatencyMicros() {
+        return percentiles(50);
+    }
+
+    @Override
+    public Map<String, Long> getP99LatencyMicros() {
+        return percentiles(99);
+    }
+
+    @Override
+    public Map<String, Long> getP999LatencyMicros() {
+        return percentiles(99.9);
+    }
+
+    @Override
+    public Map<String, Long> getMaxLatencyMicros() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, CommandMetrics> entry : commands.entrySet())
+            values.put(entry.getKey(), entry.getValue().latency.getMaxValue());
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getStatusCodeCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (int i = 0; i < statusCodes.length(); i++) {
+            long count = statusCodes.get(i);
+            if (count != 0)
+                counts.put(Integer.toString(i), count);
+        }
+        return counts;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getReplyLines() {
+        return replyLines.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (CommandMetrics metrics : commands.values()) {
+            metrics.latency.reset();
+            metrics.errors.reset();
+        }
+        for (int i = 0; i < statusCodes.length(); i++)
+            statusCodes.set(i, 0);
+        bytesRead.reset();
+        bytesWritten.reset();
+        replyLines.reset();
+    }
+
+    private Map<String, Long> percentiles(double percentile) {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, CommandMetrics> entry : commands.entrySet())
+            values.put(entry.getKey(), entry.getValue().latency.getValueAtPercentile(percentile));
+        return values;
+    }
+
+    private CommandMetrics getCommandMetrics(String command) {
+        CommandMetrics metrics = commands.get(command);
+        if (metrics == null) {
+            CommandMetrics created = new CommandMetrics();
+            metrics = commands.putIfAbsent(command, created);
+            if (metrics == null)
+                metrics = created;
+        }
+        return metrics;
+    }
+
+    private static class CommandMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram(HIGHEST_LATENCY_MICROS);
+        private final LongAdder errors = new LongAdder();
+    }
+}
@@ -0,0 +1,34 @@
+package ca.ubc.cs317.dict.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of ClientMetrics. Maps are keyed by command name (e.g., "DEFINE", "SHOW DB") or, for status
+ * codes, by the code as a string. All values are cumulative since the metrics were created or last reset.
+ */
+public interface ClientMetricsMXBean {
+
+    Map<String, Long> getRequestCounts();
+
+    Map<String, Long> getErrorCounts();
+
+    Map<String, Double> getMeanLatencyMicros();
+
+    Map<String, Long> getP50LatencyMicros();
+
+    Map<String, Long> getP99LatencyMicros();
+
+    Map<String, Long> getP999LatencyMicros();
+
+    Map<String, Long> getMaxLatencyMicros();
+
+    Map<String, Long> getStatusCodeCounts();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    long getReplyLines();
+
+    void reset();
+}
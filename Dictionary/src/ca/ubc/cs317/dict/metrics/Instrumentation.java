@@ -0,0 +1,50 @@
+package ca.ubc.cs317.dict.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers management beans (ClientMetrics, connection pools, caches) with the platform MBean server under the
+ * "ca.ubc.cs317.dict" domain, so they can be inspected with JConsole or any JMX client. Registration problems are
+ * ignored: monitoring must never prevent the client from working.
+ */
+public class Instrumentation {
+
+    public static final String DOMAIN = "ca.ubc.cs317.dict";
+
+    /** Registers a management bean, replacing any bean already registered with the same type and name.
+     *
+     * @param type Type of the bean, e.g., "ConnectionPool".
+     * @param name Name distinguishing beans of the same type, or null if there is only one.
+     * @param bean An object implementing an MBean or MXBean interface.
+     * @return true if the bean was registered.
+     */
+    public static boolean register(String type, String name, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(type, name);
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+            server.registerMBean(bean, objectName);
+            return true;
+        } catch (JMException | SecurityException e) {
+            return false;
+        }
+    }
+
+    public static void unregister(String type, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(type, name);
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+        } catch (JMException | SecurityException e) {
+        }
+    }
+
+    private static ObjectName objectName(String type, String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=" + type + (name == null ? "" : ",name=" + ObjectName.quote(name)));
+    }
+}
@@ -0,0 +1,109 @@
+package ca.ubc.cs317.dict.metrics;
+
+import ca.ubc.cs317.dict.util.LatencyHistogram;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes a summary of ClientMetrics to a java.util.logging Logger at a fixed interval: the number of requests and
+ * errors of each command during the interval, cumulative p50/p99 latencies, and the bytes read and written during the
+ * interval, followed by any additional sources (e.g., cache or pool statistics).
+ */
+public class MetricsLogger implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsLogger.class.getName());
+
+    private final ClientMetrics metrics;
+    private final Map<String, Callable<?>> sources = new LinkedHashMap<>();
+    private final ScheduledExecutorService timer;
+
+    private Map<String, Long> lastRequests = new LinkedHashMap<>();
+    private Map<String, Long> lastErrors = new LinkedHashMap<>();
+    private long lastBytesRead = 0;
+    private long lastBytesWritten = 0;
+
+    /** Starts logging a summary of the given metrics.
+     *
+     * @param metrics The metrics to be summarized.
+     * @param intervalSeconds Time between log lines.
+     */
+    public MetricsLogger(ClientMetrics metrics, long intervalSeconds) {
+        this.metrics = metrics;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "dict-metrics-logger");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                LOGGER.info(summary());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /** Adds a value to be appended to every log line.
+     *
+     * @param name Label of the value.
+     * @param source Called on the logging thread to get the current value.
+     */
+    public synchronized void addSource(String name, Callable<?> source) {
+        sources.put(name, source);
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    synchronized String summary() {
+        StringBuilder line = new StringBuilder();
+        Map<String, Long> requests = metrics.getRequestCounts();
+        Map<String, Long> errors = metrics.getErrorCounts();
+        for (Map.Entry<String, Long> entry : requests.entrySet()) {
+            String command = entry.getKey();
+            long count = entry.getValue() - value(lastRequests, command);
+            long failed = value(errors, command) - value(lastErrors, command);
+            if (count == 0 && failed == 0)
+                continue;
+            LatencyHistogram latency = metrics.getLatencyHistogram(command);
+            line.append(String.format(Locale.ROOT, "%s n=%d err=%d p50=%dus p99=%dus; ", command, count, failed,
+                    latency.getValueAtPercentile(50), latency.getValueAtPercentile(99)));
+        }
+        long bytesRead = metrics.getBytesRead();
+        long bytesWritten = metrics.getBytesWritten();
+        line.append("in=").append(bytesRead - lastBytesRead).append("B out=").append(bytesWritten - lastBytesWritten)
+                .append('B');
+        for (Map.Entry<String, Callable<?>> source : sources.entrySet()) {
+            try {
+                line.append("; ").append(source.getKey()).append(": ").append(source.getValue().call());
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Metrics source failed: " + source.getKey(), e);
+            }
+        }
+
+        lastRequests = requests;
+        lastErrors = errors;
+        lastBytesRead = bytesRead;
+        lastBytesWritten = bytesWritten;
+        return line.toString();
+    }
+
+    private static long value(Map<String, Long> map, String key) {
+        Long value = map.get(key);
+        return value == null ? 0 : value;
+    }
+}
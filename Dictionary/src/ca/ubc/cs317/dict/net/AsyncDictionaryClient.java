@@ -0,0 +1,215 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.util.VirtualThreads;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Asynchronous facade over a blocking DictionaryClient. Every lookup runs as a task on an executor and is reported
+ * through a CompletableFuture, which may be cancelled or given a deadline. Cancelling a future, or letting its deadline
+ * expire, interrupts the task if it is still waiting for a connection, and keeps it from starting if it hasn't yet.
+ * <p>
+ * By default every task runs on a virtual thread of its own when the JDK provides them, so lookups blocked on the network
+ * don't each hold a platform thread, and on a cached pool of daemon threads otherwise. Any other ExecutorService may be
+ * supplied instead.
+ */
+public class AsyncDictionaryClient {
+
+    private final DictionaryClient client;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final ScheduledExecutorService timer;
+
+    /** Wraps a blocking client, running its lookups on the given executor.
+     *
+     * @param client The client used to perform the lookups.
+     * @param executor The executor on which lookups are run. It is not shut down by close.
+     */
+    public AsyncDictionaryClient(DictionaryClient client, ExecutorService executor) {
+        this(client, executor, false);
+    }
+
+    /** Wraps a blocking client, running its lookups on virtual threads if the JDK provides them, or on a cached pool of
+     * daemon threads otherwise.
+     *
+     * @param client The client used to perform the lookups.
+     */
+    public AsyncDictionaryClient(DictionaryClient client) {
+        this(client, defaultExecutor(), true);
+    }
+
+    private AsyncDictionaryClient(DictionaryClient client, ExecutorService executor, boolean ownsExecutor) {
+        this.client = client;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("dict-async-deadline"));
+    }
+
+    public CompletableFuture<Collection<Definition>> getDefinitionsAsync(String word, Database database) {
+        return getDefinitionsAsync(word, database, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /** Requests all definitions for a specific word, failing with a TimeoutException if they haven't been retrieved
+     * within the given time.
+     *
+     * @param word The word whose definition is to be retrieved.
+     * @param database The database to be used to retrieve the definition (may be '*' or '!').
+     * @param timeout Maximum time to wait for the definitions, or 0 for no deadline.
+     * @param unit Unit of the timeout.
+     * @return A future completed with the definitions returned by the server.
+     */
+    public CompletableFuture<Collection<Definition>> getDefinitionsAsync(final String word, final Database database,
+                                                                         long timeout, TimeUnit unit) {
+        return submit(new Callable<Collection<Definition>>() {
+            @Override
+            public Collection<Definition> call() throws Exception {
+                return client.getDefinitions(word, database);
+            }
+        }, timeout, unit);
+    }
+
+    /** Requests all definitions for a specific word, handing each one to a listener as soon as it has been read. The
+     * listener is called from the thread performing the lookup.
+     *
+     * @param word The word whose definition is to be retrieved.
+     * @param database The database to be used to retrieve the definition (may be '*' or '!').
+     * @param listener The listener that receives each definition returned by the server.
+     * @return A future completed once the whole reply has been read.
+     */
+    public CompletableFuture<Void> streamDefinitionsAsync(final String word, final Database database,
+                                                          final DefinitionListener listener) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                client.streamDefinitions(word, database, listener);
+                return null;
+            }
+        }, 0, TimeUnit.MILLISECONDS);
+    }
+
+    public CompletableFuture<Set<String>> getMatchListAsync(String word, MatchingStrategy strategy, Database database) {
+        return getMatchListAsync(word, strategy, database, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /** Requests a list of matches for a specific word pattern, failing with a TimeoutException if they haven't been
+     * retrieved within the given time.
+     *
+     * @param word     The word whose definition is to be retrieved.
+     * @param strategy The strategy to be used to retrieve the list of matches (e.g., prefix, exact).
+     * @param database The database to be used to retrieve the definition (may be '*' or '!').
+     * @param timeout Maximum time to wait for the matches, or 0 for no deadline.
+     * @param unit Unit of the timeout.
+     * @return A future completed with the matches returned by the server.
+     */
+    public CompletableFuture<Set<String>> getMatchListAsync(final String word, final MatchingStrategy strategy,
+                                                            final Database database, long timeout, TimeUnit unit) {
+        return submit(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() throws Exception {
+                return client.getMatchList(word, strategy, database);
+            }
+        }, timeout, unit);
+    }
+
+    public CompletableFuture<Collection<Database>> getDatabaseListAsync() {
+        return submit(new Callable<Collection<Database>>() {
+            @Override
+            public Collection<Database> call() throws Exception {
+                return client.getDatabaseList();
+            }
+        }, 0, TimeUnit.MILLISECONDS);
+    }
+
+    public CompletableFuture<Set<MatchingStrategy>> getStrategyListAsync() {
+        return submit(new Callable<Set<MatchingStrategy>>() {
+            @Override
+            public Set<MatchingStrategy> call() throws Exception {
+                return client.getStrategyList();
+            }
+        }, 0, TimeUnit.MILLISECONDS);
+    }
+
+    public DictionaryClient getClient() {
+        return client;
+    }
+
+    /** Closes the underlying client and stops accepting new lookups. Lookups still running fail once the client is
+     * closed.
+     */
+    public void close() {
+        timer.shutdownNow();
+        if (ownsExecutor)
+            executor.shutdownNow();
+        client.close();
+    }
+
+    private <T> CompletableFuture<T> submit(final Callable<T> call, long timeout, TimeUnit unit) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final Future<?> task;
+        try {
+            task = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (result.isDone())
+                        return; // Cancelled or expired while queued
+                    try {
+                        result.complete(call.call());
+                    } catch (Throwable t) {
+                        result.completeExceptionally(t);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        final ScheduledFuture<?> deadline;
+        if (timeout > 0) {
+            final String description = "Lookup did not complete within " + unit.toMillis(timeout) + " ms";
+            deadline = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    result.completeExceptionally(new TimeoutException(description));
+                }
+            }, timeout, unit);
+        } else {
+            deadline = null;
+        }
+
+        result.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T value, Throwable error) {
+                if (deadline != null)
+                    deadline.cancel(false);
+                if (error != null)
+                    task.cancel(true); // No effect if the task has already finished
+            }
+        });
+        return result;
+    }
+
+    private static ExecutorService defaultExecutor() {
+        ExecutorService executor = VirtualThreads.newPerTaskExecutor();
+        return executor != null ? executor : Executors.newCachedThreadPool(daemonThreads("dict-async"));
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
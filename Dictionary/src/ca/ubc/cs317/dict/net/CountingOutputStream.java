@@ -0,0 +1,42 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.metrics.ClientMetrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that counts the bytes written through it and records them in ClientMetrics.
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+    private final ClientMetrics metrics;
+    private long count;
+
+    CountingOutputStream(OutputStream out, ClientMetrics metrics) {
+        super(out);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+        metrics.recordBytesWritten(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        // FilterOutputStream would write the array one byte at a time
+        out.write(b, off, len);
+        count += len;
+        metrics.recordBytesWritten(len);
+    }
+
+    /** Returns the number of bytes written since the stream was created.
+     */
+    long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,40 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * DefinitionListener that keeps every definition it receives, optionally forwarding each one to another listener as
+ * well. Used wherever a streamed reply also needs to be available as a whole.
+ */
+public class DefinitionCollector implements DefinitionListener {
+
+    private final List<Definition> definitions = new ArrayList<>();
+    private final DefinitionListener next;
+
+    public DefinitionCollector() {
+        this(null);
+    }
+
+    public DefinitionCollector(DefinitionListener next) {
+        this.next = next;
+    }
+
+    @Override
+    public void definitionReceived(Definition definition) {
+        definitions.add(definition);
+        if (next != null)
+            next.definitionReceived(definition);
+    }
+
+    public Collection<Definition> getDefinitions() {
+        return definitions;
+    }
+
+    public boolean isEmpty() {
+        return definitions.isEmpty();
+    }
+}
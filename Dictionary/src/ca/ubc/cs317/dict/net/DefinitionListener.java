@@ -0,0 +1,17 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Definition;
+
+/**
+ * Receives definitions one at a time, as soon as each one has been read from the server, instead of waiting for the
+ * whole DEFINE reply.
+ */
+public interface DefinitionListener {
+
+    /** Called once for every definition in a reply, in the order they were sent by the server. This is called from the
+     * thread performing the lookup.
+     *
+     * @param definition The definition that was just read.
+     */
+    void definitionReceived(Definition definition);
+}
@@ -0,0 +1,68 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Common view of anything that can answer DICT lookups, whether it is a single DictionaryConnection or a client that
+ * spreads requests over several of them.
+ */
+public interface DictionaryClient {
+
+    /** Number of matches at which a MATCH reply is assumed to have been truncated by the server, as dictd and other
+     * servers cap the size of a reply. Such a reply may leave out headwords, so it must not be taken as the full list.
+     */
+    int MATCH_TRUNCATION_LIMIT = 1000;
+
+    /** Requests and retrieves all definitions for a specific word.
+     *
+     * @param word The word whose definition is to be retrieved.
+     * @param database The database to be used to retrieve the definition (may be '*' or '!').
+     * @return A collection of Definition objects containing all definitions returned by the server.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException;
+
+    /** Requests all definitions for a specific word, handing each one to a listener as soon as it is available instead
+     * of waiting for all of them.
+     *
+     * @param word The word whose definition is to be retrieved.
+     * @param database The database to be used to retrieve the definition (may be '*' or '!').
+     * @param listener The listener that receives each definition, in the order returned by the server.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    void streamDefinitions(String word, Database database, DefinitionListener listener) throws DictConnectionException;
+
+    /** Requests and retrieves a list of matches for a specific word pattern.
+     *
+     * @param word     The word whose definition is to be retrieved.
+     * @param strategy The strategy to be used to retrieve the list of matches (e.g., prefix, exact).
+     * @param database The database to be used to retrieve the definition (may be '*' or '!').
+     * @return A set of word matches returned by the server.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException;
+
+    /** Requests and retrieves a list of all valid databases used in the server.
+     *
+     * @return A collection of Database objects supported by the server.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    Collection<Database> getDatabaseList() throws DictConnectionException;
+
+    /** Requests and retrieves a list of all valid matching strategies supported by the server.
+     *
+     * @return A set of MatchingStrategy objects supported by the server.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    Set<MatchingStrategy> getStrategyList() throws DictConnectionException;
+
+    /** Releases every connection held by this client. Any exception raised while closing is ignored.
+     */
+    void close();
+}
@@ -1,15 +1,14 @@
 package ca.ubc.cs317.dict.net;
 
 import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.exception.DictRequestRejectedException;
+import ca.ubc.cs317.dict.exception.DictServerUnavailableException;
+import ca.ubc.cs317.dict.metrics.ClientMetrics;
 import ca.ubc.cs317.dict.model.Database;
 import ca.ubc.cs317.dict.model.Definition;
 import ca.ubc.cs317.dict.model.MatchingStrategy;
-import ca.ubc.cs317.dict.util.DictStringParser;
 
-
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.util.*;
@@ -17,13 +16,18 @@ import java.util.*;
 /**
  * Created by Jonatan on 2017-09-09.
  */
-public class DictionaryConnection {
+public class DictionaryConnection implements DictionaryClient {
 
     private static final int DEFAULT_PORT = 2628;
 
+    // Maximum number of pipelined commands waiting for a reply in defineAll and matchAll
+    private static final int PIPELINE_WINDOW = 64;
+
     private Socket socket;
-    private BufferedReader input;
+    private ReplyDecoder input;
     private PrintWriter output;
+    private CountingOutputStream counter;
+    private final ClientMetrics metrics;
 
     private Map<String, Database> databaseMap = new LinkedHashMap<String, Database>();
     
@@ -37,14 +41,31 @@ public class DictionaryConnection {
      */
 
     public DictionaryConnection(String host, int port) throws DictConnectionException {
+        this(host, port, ClientMetrics.getDefault());
+    }
+
+    /** Establishes a new connection with a DICT server using an explicit host and port number, recording the latency,
+     * status codes and traffic of every request in the given metrics.
+     *
+     * @param host Name of the host where the DICT server is running
+     * @param port Port number used by the DICT server
+     * @param metrics The metrics that requests on this connection are recorded in
+     * @throws DictConnectionException If the host does not exist, the connection can't be established, or the messages
+     * don't match their expected value.
+     */
+    public DictionaryConnection(String host, int port, ClientMetrics metrics) throws DictConnectionException {
         // socket: our client socket
         // output: output stream
         // input: input stream
+        this.metrics = metrics;
+        long started = System.nanoTime();
+        boolean connected = false;
 
         try {
             socket = new Socket(host, port);
-            output = new PrintWriter(socket.getOutputStream(), true);
-            input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            counter = new CountingOutputStream(socket.getOutputStream(), metrics);
+            output = new PrintWriter(counter, true);
+            input = new ReplyDecoder(socket.getInputStream(), metrics);
 
             // Set read timeout
             socket.setSoTimeout(2500);
@@ -59,13 +80,16 @@ public class DictionaryConnection {
             validateGeneralStatus(statusCode);
 
             if (statusCode == success) {
+                connected = true;
                 return;
             } else if (statusCode == denied) {
                 throw new DictConnectionException("Access denied");
             }
 
         } catch (IOException e) {
-            throw new DictConnectionException("Couldn't get I/O for the connection to:" + host + ":" + port);
+            throw new DictConnectionException("Couldn't get I/O for the connection to:" + host + ":" + port, e);
+        } finally {
+            metrics.recordRequest(ClientMetrics.CONNECT, started, connected);
         }
     }
 
@@ -80,6 +104,57 @@ public class DictionaryConnection {
         this(host, DEFAULT_PORT);
     }
 
+    /** Replaces the local databaseMap with databases already retrieved by another connection to the same server, so
+     * that this connection doesn't need its own SHOW DATABASES round trip before answering DEFINE requests.
+     *
+     * @param databases Mapping from database name to Database object, in the order returned by the server.
+     */
+    synchronized void shareDatabases(Map<String, Database> databases) {
+        databaseMap.clear();
+        databaseMap.putAll(databases);
+    }
+
+    /** Discards the local databaseMap and retrieves the list of databases from the server again.
+     *
+     * @return A collection of Database objects supported by the server.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    synchronized Collection<Database> reloadDatabaseList() throws DictConnectionException {
+        databaseMap.clear();
+        return getDatabaseList();
+    }
+
+    /** Returns a snapshot of the local databaseMap, in the order returned by the server.
+     *
+     * @return A copy of the mapping from database name to Database object.
+     */
+    synchronized Map<String, Database> getDatabaseMap() {
+        return new LinkedHashMap<>(databaseMap);
+    }
+
+    /** Checks that the connection is still usable by sending a STATUS command and waiting for its reply.
+     *
+     * @return true if the server answered with the expected status code, false otherwise.
+     */
+    synchronized boolean ping() {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown())
+            return false;
+
+        int success = 210;
+        long started = System.nanoTime();
+        boolean alive = false;
+
+        try {
+            output.println("STATUS");
+            alive = getReturnStatus() == success;
+            return alive;
+        } catch (DictConnectionException e) {
+            return false;
+        } finally {
+            metrics.recordRequest(ClientMetrics.STATUS, started, alive);
+        }
+    }
+
     /** Sends the final QUIT message and closes the connection with the server. This function ignores any exception that
      * may happen while sending the message, receiving its reply, or closing the connection.
      *
@@ -107,74 +182,100 @@ public class DictionaryConnection {
      * @return A collection of Definition objects containing all definitions returned by the server.
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      */
-    public synchronized Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
-        Collection<Definition> set = new ArrayList<>();
-        getDatabaseList(); // Ensure the list of databases has been populated
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        DefinitionCollector collector = new DefinitionCollector();
+        streamDefinitions(word, database, collector);
+        return collector.getDefinitions();
+    }
 
+    /** Requests all definitions for a specific word, handing each one to a listener as soon as it has been read instead
+     * of waiting for the end of the reply.
+     *
+     * @param word The word whose definition is to be retrieved.
+     * @param database The database to be used to retrieve the definition (may be '*' or '!').
+     * @param listener The listener that receives each definition returned by the server.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    @Override
+    public void streamDefinitions(String word, Database database, DefinitionListener listener) throws DictConnectionException {
         // Remove blank space from beginning and end of string
         word = word.trim();
 
         // Simply return if no word entry
-        if (word.isEmpty()) return set;
-
-        // Set variables for returned status codes
-        int noMatch = 552;
-        int success = 150;
-        int definitionStart = 151;
-        int terminate = 250;
-        int invalidDb = 550;
-
-        try {
-            // Send Request for definitions
-            String databaseName = database.getName();
-            output.println("DEFINE" + " " + databaseName + " \"" + word + "\"");
-
-            // Check connection status code
-            int statusCode = getReturnStatus();
-
-            if (statusCode == noMatch) {
-                return set;
+        if (word.isEmpty()) return;
+
+        RequestTrace trace = new RequestTrace(ClientMetrics.DEFINE, word, database, null);
+        boolean success = false;
+        synchronized (this) {
+            trace.lockAcquired(input, counter);
+            getDatabaseList(); // Ensure the list of databases has been populated
+
+            long started = System.nanoTime();
+            try {
+                // Send Request for definitions
+                trace.sending();
+                output.println(defineCommand(word, database));
+                trace.sent();
+                readDefinitions(listener, trace);
+                success = true;
+            } catch(IOException e){
+                throw new DictConnectionException("Network error when finding definition", e);
+            } finally {
+                metrics.recordRequest(ClientMetrics.DEFINE, started, success);
+                trace.end(success);
             }
+        }
+    }
 
-            validateGeneralStatus(statusCode);
+    /** Requests and retrieves all definitions for a batch of words. All DEFINE commands are pipelined: up to
+     * PIPELINE_WINDOW commands are written before their replies are read, so the batch costs roughly one round trip per
+     * window instead of one per word. Replies are read in the order the commands were sent.
+     *
+     * @param words The words whose definitions are to be retrieved. Duplicates are only requested once.
+     * @param database The database to be used to retrieve the definitions (may be '*' or '!').
+     * @return A map from each word, as given, to the definitions returned by the server for it, in the order of the
+     * original list. Words without a definition are mapped to an empty collection.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     * After an exception the state of the session is unknown, so the connection should be closed.
+     */
+    public Map<String, Collection<Definition>> defineAll(List<String> words, Database database) throws DictConnectionException {
+        Map<String, Collection<Definition>> results = new LinkedHashMap<>();
+        List<String> pending = new ArrayList<>();
+        List<String> commands = new ArrayList<>();
+
+        for (String word : words) {
+            if (results.containsKey(word)) continue;
+            results.put(word, new ArrayList<Definition>());
+            if (!word.trim().isEmpty()) {
+                pending.add(word);
+                commands.add(defineCommand(word.trim(), database));
+            }
+        }
 
-            if (statusCode == success) {
-                String nextDefinition = input.readLine();
-                String [] splitDefinition = DictStringParser.splitAtoms(nextDefinition);
-
-                //New definition line in form: definitionStart "returnedWord" returnedDb
-                while (splitDefinition[0].equals(Integer.toString(definitionStart))) {
-                    String returnedWord = splitDefinition[1];
-                    String returnedDb = splitDefinition[2];
-
-                    // Create definition object, set definition and add to set
-                    String nextLine = input.readLine();
-                    Database mappedDb = databaseMap.get(returnedDb);
-                    Definition def = new Definition(returnedWord, mappedDb);
-
-                    // Append definition together
-                    while (!nextLine.equals(".")) {
-                        def.appendDefinition(nextLine);
-                        nextLine = input.readLine();
-                    }
-                    set.add(def);
-
-                    nextDefinition = input.readLine();
-                    splitDefinition = DictStringParser.splitAtoms(nextDefinition);
+        RequestTrace trace = new RequestTrace(ClientMetrics.DEFINE_BATCH, pending.isEmpty() ? null : pending.get(0), database, null);
+        boolean success = false;
+        synchronized (this) {
+            trace.lockAcquired(input, counter);
+            getDatabaseList(); // Ensure the list of databases has been populated
+
+            long started = System.nanoTime();
+            try {
+                int sent = 0;
+                for (int received = 0; received < pending.size(); received++) {
+                    sent = sendPipelined(commands, sent, received, trace);
+                    DefinitionCollector collector = new DefinitionCollector();
+                    readDefinitions(collector, trace);
+                    results.put(pending.get(received), collector.getDefinitions());
                 }
-                // Check validity of terminating status code
-                // terminating line in the form: terminate ok [details]
-                if (!splitDefinition[0].equals(Integer.toString(terminate))) {
-                    throw new DictConnectionException("Expected termination status for strategy: " + terminate + System.lineSeparator() +
-                            "Received termination status: " + splitDefinition[0]);
-                }
-            } else if (statusCode == invalidDb) {
-                throw new DictConnectionException("Invalid database input");
-            } else throw new DictConnectionException("Invalid status code received for definition: " + statusCode);
-        } catch(IOException e){
-            throw new DictConnectionException("Network error when finding definition");
+                success = true;
+            } catch (IOException e) {
+                throw new DictConnectionException("Network error when finding definitions", e);
+            } finally {
+                metrics.recordRequest(ClientMetrics.DEFINE_BATCH, started, success);
+                trace.end(success);
+            }
         }
-        return set;
+        return results;
     }
 
     /** Requests and retrieves a list of matches for a specific word pattern.
@@ -187,58 +288,213 @@ public class DictionaryConnection {
      * @return A set of word matches returned by the server.
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      */
-    public synchronized Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
-        Set<String> set = new LinkedHashSet<>();
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        // Remove blank space from beginning and end of string
+        word = word.trim();
 
+        // Simply return if no word entry
+        if (word.isEmpty()) return new LinkedHashSet<>();
+
+        RequestTrace trace = new RequestTrace(ClientMetrics.MATCH, word, database, strategy);
+        boolean success = false;
+        synchronized (this) {
+            trace.lockAcquired(input, counter);
+            long started = System.nanoTime();
+            try {
+                // Send request
+                trace.sending();
+                output.println(matchCommand(word, strategy, database));
+                trace.sent();
+                Set<String> matches = readMatches(trace);
+                success = true;
+                return matches;
+            } catch (IOException e) {
+                throw new DictConnectionException("Network error when finding matches", e);
+            } finally {
+                metrics.recordRequest(ClientMetrics.MATCH, started, success);
+                trace.end(success);
+            }
+        }
+    }
+
+    /** Requests and retrieves the list of matches for a batch of word patterns, pipelining the MATCH commands in the same
+     * way as defineAll.
+     *
+     * @param words    The word patterns to be matched. Duplicates are only requested once.
+     * @param strategy The strategy to be used to retrieve the list of matches (e.g., prefix, exact).
+     * @param database The database to be used to retrieve the matches (may be '*' or '!').
+     * @return A map from each word, as given, to the set of matches returned by the server for it, in the order of the
+     * original list. Words without a match are mapped to an empty set.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     * After an exception the state of the session is unknown, so the connection should be closed.
+     */
+    public Map<String, Set<String>> matchAll(List<String> words, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        Map<String, Set<String>> results = new LinkedHashMap<>();
+        List<String> pending = new ArrayList<>();
+        List<String> commands = new ArrayList<>();
+
+        for (String word : words) {
+            if (results.containsKey(word)) continue;
+            results.put(word, new LinkedHashSet<String>());
+            if (!word.trim().isEmpty()) {
+                pending.add(word);
+                commands.add(matchCommand(word.trim(), strategy, database));
+            }
+        }
+
+        RequestTrace trace = new RequestTrace(ClientMetrics.MATCH_BATCH, pending.isEmpty() ? null : pending.get(0), database, strategy);
+        boolean success = false;
+        synchronized (this) {
+            trace.lockAcquired(input, counter);
+            long started = System.nanoTime();
+            try {
+                int sent = 0;
+                for (int received = 0; received < pending.size(); received++) {
+                    sent = sendPipelined(commands, sent, received, trace);
+                    results.put(pending.get(received), readMatches(trace));
+                }
+                success = true;
+            } catch (IOException e) {
+                throw new DictConnectionException("Network error when finding matches", e);
+            } finally {
+                metrics.recordRequest(ClientMetrics.MATCH_BATCH, started, success);
+                trace.end(success);
+            }
+        }
+        return results;
+    }
+
+    static String defineCommand(String word, Database database) {
+        return "DEFINE" + " " + database.getName() + " \"" + word + "\"";
+    }
+
+    static String matchCommand(String word, MatchingStrategy strategy, Database database) {
+        return "MATCH " + database.getName() + " " + strategy.getName() + " \"" + word + "\"";
+    }
+
+    /** Writes as many of the pending commands as the pipeline window allows, given how many replies have already been
+     * read, and flushes them to the server in a single write.
+     *
+     * @param commands All commands in the batch.
+     * @param sent Number of commands already sent.
+     * @param received Number of replies already read.
+     * @param trace The trace of the batch.
+     * @return The new number of commands sent.
+     */
+    private int sendPipelined(List<String> commands, int sent, int received, RequestTrace trace) {
+        if (sent >= commands.size() || sent - received >= PIPELINE_WINDOW)
+            return sent;
+        trace.sending();
+        while (sent < commands.size() && sent - received < PIPELINE_WINDOW) {
+            // DICT commands are terminated by CRLF; print doesn't flush, so the whole window goes out at once
+            output.print(commands.get(sent++) + "\r\n");
+        }
+        output.flush();
+        trace.sent();
+        return sent;
+    }
+
+    /** Reads the reply to a DEFINE command, starting with its initial status line.
+     *
+     * @param listener The listener that receives each definition in the reply. Nothing is received if there was no
+     *                 match.
+     * @param trace The trace of the request.
+     * @throws DictConnectionException If the messages don't match their expected value.
+     * @throws IOException If the connection was interrupted.
+     */
+    private void readDefinitions(DefinitionListener listener, RequestTrace trace) throws DictConnectionException, IOException {
+        // Set variables for returned status codes
         int noMatch = 552;
-        int success = 152;
+        int success = 150;
+        int definitionStart = 151;
         int terminate = 250;
         int invalidDb = 550;
-        int invalidStrat = 551;
 
-        // Remove blank space from beginning and end of string
-        word = word.trim();
+        // Check connection status code
+        int statusCode = getReturnStatus();
+        trace.statusReceived(statusCode);
 
-        // Simply return if no word entry
-        if (word.isEmpty()) return set;
+        if (statusCode == noMatch) {
+            return;
+        }
 
-        try {
-            // Send request
-            String strategyName = strategy.getName();
-            String databaseName = database.getName();
-            output.println("MATCH " + databaseName + " " + strategyName + " \"" + word + "\"");
+        validateGeneralStatus(statusCode);
 
-            // Check connection status code
-            int statusCode = getReturnStatus();
+        if (statusCode == success) {
+            int nextStatus = input.readStatus();
 
-            validateGeneralStatus(statusCode);
+            //New definition line in form: definitionStart "returnedWord" returnedDb
+            while (nextStatus == definitionStart) {
+                trace.definitionStarted();
+                String returnedWord = input.readAtom();
+                String returnedDb = input.readAtom();
 
-            if (statusCode == noMatch) {
-                return set;
-            } else if (statusCode == success) {
-                // Parse each returned match, put into set
-                String nextMatch = input.readLine();
-                while (!nextMatch.equals(".")) {
-                    // Lines in the form: dictName "matchWord"
-                    String[] splitLine = DictStringParser.splitAtoms(nextMatch);
-                    String matchWord = splitLine[1];
-                    set.add(matchWord);
-                    nextMatch = input.readLine();
-                }
-                // Check validity of terminating status code
-                int endStatusCode = getReturnStatus();
-                if (endStatusCode != terminate) {
-                    throw new DictConnectionException("Expected termination status for matches: " + terminate + System.lineSeparator() +
-                            "Received termination status: " + endStatusCode);
-                }
-            } else if (statusCode == invalidDb) {
-                throw new DictConnectionException("Invalid database input");
-            } else if (statusCode == invalidStrat) {
-                throw new DictConnectionException("Invalid strategy input");
-            } else throw new DictConnectionException("Invalid status code received for matches: " + statusCode);
-        } catch (IOException e) {
-            throw new DictConnectionException("Network error when finding matches");
-        }
+                // Create definition object; the body is decoded once, after all its lines have been read
+                Database mappedDb = databaseMap.get(returnedDb);
+                Definition def = new Definition(returnedWord, mappedDb);
+                def.setDefinition(input.readTextBlock());
+                trace.definitionParsed(def);
+                listener.definitionReceived(def);
+
+                nextStatus = input.readStatus();
+            }
+            // Check validity of terminating status code
+            // terminating line in the form: terminate ok [details]
+            if (nextStatus != terminate) {
+                throw new DictConnectionException("Expected termination status for strategy: " + terminate + System.lineSeparator() +
+                        "Received termination status: " + nextStatus);
+            }
+        } else if (statusCode == invalidDb) {
+            throw new DictRequestRejectedException("Invalid database input", statusCode);
+        } else throw new DictConnectionException("Invalid status code received for definition: " + statusCode);
+    }
+
+    /** Reads the reply to a MATCH command, starting with its initial status line.
+     *
+     * @param trace The trace of the request.
+     * @return The matches in the reply, or an empty set if there was no match.
+     * @throws DictConnectionException If the messages don't match their expected value.
+     * @throws IOException If the connection was interrupted.
+     */
+    private Set<String> readMatches(RequestTrace trace) throws DictConnectionException, IOException {
+        Set<String> set = new LinkedHashSet<>();
+
+        int noMatch = 552;
+        int success = 152;
+        int terminate = 250;
+        int invalidDb = 550;
+        int invalidStrat = 551;
+
+        // Check connection status code
+        int statusCode = getReturnStatus();
+        trace.statusReceived(statusCode);
+
+        validateGeneralStatus(statusCode);
+
+        if (statusCode == noMatch) {
+            return set;
+        } else if (statusCode == success) {
+            // Parse each returned match, put into set
+            while (input.readTextLine()) {
+                // Lines in the form: dictName "matchWord"
+                input.skipAtom();
+                String matchWord = input.readAtom();
+                if (matchWord == null)
+                    throw new DictConnectionException("Invalid match line received");
+                set.add(matchWord);
+                trace.matchParsed();
+            }
+            // Check validity of terminating status code
+            int endStatusCode = getReturnStatus();
+            if (endStatusCode != terminate) {
+                throw new DictConnectionException("Expected termination status for matches: " + terminate + System.lineSeparator() +
+                        "Received termination status: " + endStatusCode);
+            }
+        } else if (statusCode == invalidDb) {
+            throw new DictRequestRejectedException("Invalid database input", statusCode);
+        } else if (statusCode == invalidStrat) {
+            throw new DictRequestRejectedException("Invalid strategy input", statusCode);
+        } else throw new DictConnectionException("Invalid status code received for matches: " + statusCode);
         return set;
     }
 
@@ -259,6 +515,8 @@ public class DictionaryConnection {
         int noMatch = 554;
         int success = 110;
         int terminate = 250;
+        long started = System.nanoTime();
+        boolean completed = false;
 
         try {
             // Send request for list of databases
@@ -270,17 +528,16 @@ public class DictionaryConnection {
             validateGeneralStatus(statusCode);
 
             if (statusCode == noMatch) {
+                completed = true;
                 return databaseMap.values();
             } else if (statusCode == success) {
                 // Parse each returned database, put into databaseMap
-                String nextLine = input.readLine();
-                while (!nextLine.equals(".")) {
+                while (input.readTextLine()) {
                     // Lines in the form: dbname "dbDescription"
-                    String[] splitLine = DictStringParser.splitAtoms(nextLine);
-                    String dbName = splitLine[0];
-                    String dbDescription = splitLine[1];
-                    databaseMap.put(dbName, new Database(dbName, dbDescription));
-                    nextLine = input.readLine();
+                    String dbName = input.readAtom();
+                    String dbDescription = input.readAtom();
+                    if (dbName != null)
+                        databaseMap.put(dbName, new Database(dbName, dbDescription));
                 }
                 // Check validity of terminating status code
                 int endStatusCode = getReturnStatus();
@@ -289,8 +546,11 @@ public class DictionaryConnection {
                             "Received termination status: " + endStatusCode);
                 }
             } else throw new DictConnectionException("\"Invalid status code received for dictionary: " + statusCode);
+            completed = true;
         } catch (IOException e) {
-            throw new DictConnectionException("Network error when finding databases");
+            throw new DictConnectionException("Network error when finding databases", e);
+        } finally {
+            metrics.recordRequest(ClientMetrics.SHOW_DB, started, completed);
         }
         return databaseMap.values();
     }
@@ -306,6 +566,8 @@ public class DictionaryConnection {
         int noMatch = 555;
         int success = 111;
         int terminate = 250;
+        long started = System.nanoTime();
+        boolean completed = false;
 
         try {
             // Send request for list of strategies
@@ -317,17 +579,16 @@ public class DictionaryConnection {
             validateGeneralStatus(statusCode);
 
             if (statusCode == noMatch) {
+                completed = true;
                 return set;
             } else if (statusCode == success) {
                 // Parse each returned strategy, create MatchingStrategy object, add in set
-                String nextLine = input.readLine();
-                while (!nextLine.equals(".")) {
+                while (input.readTextLine()) {
                     // Lines in the form: stratName "stratDescription"
-                    String[] splitLine = DictStringParser.splitAtoms(nextLine);
-                    String stratName = splitLine[0];
-                    String stratDescription = splitLine[1];
-                    set.add(new MatchingStrategy(stratName, stratDescription));
-                    nextLine = input.readLine();
+                    String stratName = input.readAtom();
+                    String stratDescription = input.readAtom();
+                    if (stratName != null)
+                        set.add(new MatchingStrategy(stratName, stratDescription));
                 }
                 // Check validity of terminating status code
                 int endStatusCode = getReturnStatus();
@@ -336,8 +597,11 @@ public class DictionaryConnection {
                             "Received termination status: " + endStatusCode);
                 }
             } else throw new DictConnectionException("Invalid status code received for strategy: " + statusCode);
+            completed = true;
         } catch (IOException e) {
-            throw new DictConnectionException("Network error when finding strategies");
+            throw new DictConnectionException("Network error when finding strategies", e);
+        } finally {
+            metrics.recordRequest(ClientMetrics.SHOW_STRAT, started, completed);
         }
         return set;
     }
@@ -348,8 +612,11 @@ public class DictionaryConnection {
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      */
     private int getReturnStatus() throws DictConnectionException {
-        Status status = Status.readStatus(input);
-        return status.getStatusCode();
+        try {
+            return input.readStatus();
+        } catch (IOException ex) {
+            throw new DictConnectionException(ex);
+        }
     }
 
     /** Validates current status code with a list of possible general status responses
@@ -358,7 +625,7 @@ public class DictionaryConnection {
      * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
      * Corresponding messages are given for each status code.
      */
-    private void validateGeneralStatus(int currentStatusCode) throws DictConnectionException {
+    static void validateGeneralStatus(int currentStatusCode) throws DictConnectionException {
         int commandNotRec = 500;
         int illegalParam = 501;
         int commandNotImpl = 502;
@@ -367,17 +634,17 @@ public class DictionaryConnection {
         int shutDown = 421;
 
         if (currentStatusCode == tempUnavailable) {
-            throw new DictConnectionException("Server temporarily unavailable");
+            throw new DictServerUnavailableException("Server temporarily unavailable", currentStatusCode);
         } else if (currentStatusCode ==  shutDown) {
-            throw new DictConnectionException("Server shutting down at operator request");
+            throw new DictServerUnavailableException("Server shutting down at operator request", currentStatusCode);
         } else if (currentStatusCode == commandNotRec) {
-            throw new DictConnectionException("Syntax error, command not recognized");
+            throw new DictRequestRejectedException("Syntax error, command not recognized", currentStatusCode);
         } else if (currentStatusCode == illegalParam) {
-            throw new DictConnectionException("Syntax error, illegal parameters");
+            throw new DictRequestRejectedException("Syntax error, illegal parameters", currentStatusCode);
         } else if (currentStatusCode == commandNotImpl) {
-            throw new DictConnectionException("Command not implemented");
+            throw new DictRequestRejectedException("Command not implemented", currentStatusCode);
         } else if (currentStatusCode == paramNotImpl) {
-            throw new DictConnectionException("Command parameter not implemented");
+            throw new DictRequestRejectedException("Command parameter not implemented", currentStatusCode);
         }
 
     }
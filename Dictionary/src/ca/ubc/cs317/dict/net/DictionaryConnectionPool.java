@@ -0,0 +1,497 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.exception.DictRequestRejectedException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps a number of warm DictionaryConnection sessions to the same server and hands them out to concurrent callers,
+ * so that lookups only wait for each other once every session is busy. All sessions share the database list retrieved
+ * by the first one, or the list the pool was created with.
+ */
+public class DictionaryConnectionPool implements DictionaryClient, DictionaryConnectionPoolMXBean {
+
+    public static final int DEFAULT_PORT = 2628;
+    public static final int DEFAULT_POOL_SIZE = 4;
+    public static final long DEFAULT_MAX_IDLE_MILLIS = 60_000;
+    public static final long DEFAULT_MAX_LIFETIME_MILLIS = 10 * 60_000;
+    public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 10_000;
+
+    // Idle connections older than this are checked with a STATUS command before being handed out
+    private static final long VALIDATION_INTERVAL_MILLIS = 5_000;
+
+    private final String host;
+    private final int port;
+    private final int poolSize;
+    private final long maxIdleMillis;
+    private final long maxLifetimeMillis;
+    private final long borrowTimeoutMillis;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Map<DictionaryConnection, PooledConnection> borrowed = new IdentityHashMap<>();
+    private final ScheduledExecutorService evictor;
+
+    private volatile Map<String, Database> databaseMap;
+    private volatile boolean closed = false;
+
+    /** Creates a pool of connections to a DICT server using an explicit host and port number. The first connection is
+     * established before the constructor returns, and the list of databases is retrieved once through it unless it is
+     * already known; the remaining connections are opened in the background.
+     *
+     * @param host Name of the host where the DICT server is running
+     * @param port Port number used by the DICT server
+     * @param poolSize Maximum number of connections kept open at the same time; all but the first are opened on a
+     *                 background thread, without making the constructor wait for them
+     * @param maxIdleMillis Time after which a connection that hasn't been used is closed
+     * @param maxLifetimeMillis Time after which a connection is closed once it is returned, no matter how busy it is
+     * @param databases The databases of the server, e.g., as saved by an earlier run, or null to retrieve them from
+     *                  the server. A saved list can be checked later with reloadDatabaseList.
+     * @throws DictConnectionException If the host does not exist, the connection can't be established, or the messages
+     * don't match their expected value.
+     */
+    public DictionaryConnectionPool(String host, int port, int poolSize, long maxIdleMillis, long maxLifetimeMillis,
+                                    Collection<Database> databases) throws DictConnectionException {
+        if (poolSize < 1)
+            throw new IllegalArgumentException("Pool size must be at least 1");
+
+        this.host = host;
+        this.port = port;
+        this.poolSize = poolSize;
+        this.maxIdleMillis = maxIdleMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.borrowTimeoutMillis = DEFAULT_BORROW_TIMEOUT_MILLIS;
+        this.permits = new Semaphore(poolSize, true);
+
+        if (databases != null && !databases.isEmpty()) {
+            Map<String, Database> known = new LinkedHashMap<>();
+            for (Database database : databases)
+                known.put(database.getName(), database);
+            databaseMap = Collections.unmodifiableMap(known);
+            idle.push(open());
+        } else {
+            // Bootstrap the database list once and share it with every other connection
+            DictionaryConnection first = new DictionaryConnection(host, port);
+            try {
+                first.getDatabaseList();
+            } catch (DictConnectionException e) {
+                first.close();
+                throw e;
+            }
+            databaseMap = Collections.unmodifiableMap(first.getDatabaseMap());
+            idle.push(new PooledConnection(first, databaseMap));
+        }
+
+        long evictionInterval = Math.max(1_000, Math.min(maxIdleMillis, maxLifetimeMillis) / 2);
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "dict-pool-evictor-" + DictionaryConnectionPool.this.host);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evict();
+            }
+        }, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+
+        // Warm up the remaining connections so the first concurrent lookups don't pay for the handshake, without
+        // making the caller wait for every handshake in turn
+        evictor.execute(new Runnable() {
+            @Override
+            public void run() {
+                warmUp();
+            }
+        });
+    }
+
+    /** Creates a pool of connections to a DICT server using an explicit host and port number, retrieving the list of
+     * databases through the first connection. Only that connection is established before the constructor returns.
+     *
+     * @param host Name of the host where the DICT server is running
+     * @param port Port number used by the DICT server
+     * @param poolSize Maximum number of connections kept open at the same time; all but the first are opened on a
+     *                 background thread, without making the constructor wait for them
+     * @param maxIdleMillis Time after which a connection that hasn't been used is closed
+     * @param maxLifetimeMillis Time after which a connection is closed once it is returned, no matter how busy it is
+     * @throws DictConnectionException If the host does not exist, the connection can't be established, or the messages
+     * don't match their expected value.
+     */
+    public DictionaryConnectionPool(String host, int port, int poolSize, long maxIdleMillis, long maxLifetimeMillis)
+            throws DictConnectionException {
+        this(host, port, poolSize, maxIdleMillis, maxLifetimeMillis, null);
+    }
+
+    /** Creates a pool of connections to a DICT server using an explicit host and port number, with the default pool
+     * size and eviction times.
+     *
+     * @param host Name of the host where the DICT server is running
+     * @param port Port number used by the DICT server
+     * @throws DictConnectionException If the host does not exist, the connection can't be established, or the messages
+     * don't match their expected value.
+     */
+    public DictionaryConnectionPool(String host, int port) throws DictConnectionException {
+        this(host, port, DEFAULT_POOL_SIZE, DEFAULT_MAX_IDLE_MILLIS, DEFAULT_MAX_LIFETIME_MILLIS);
+    }
+
+    /** Creates a pool of connections to a DICT server using an explicit host, with the default DICT port number, pool
+     * size and eviction times.
+     *
+     * @param host Name of the host where the DICT server is running
+     * @throws DictConnectionException If the host does not exist, the connection can't be established, or the messages
+     * don't match their expected value.
+     */
+    public DictionaryConnectionPool(String host) throws DictConnectionException {
+        this(host, DEFAULT_PORT);
+    }
+
+    /** Takes a connection out of the pool, waiting for one to be returned if all of them are in use. Idle connections
+     * that have expired or fail their health check are closed and replaced. The connection must be handed back with
+     * either release or invalidate once the caller is done with it.
+     *
+     * @return A connection for the exclusive use of the caller.
+     * @throws DictConnectionException If the pool is closed, no connection became available in time, or a new
+     * connection could not be established.
+     */
+    public DictionaryConnection borrow() throws DictConnectionException {
+        if (closed)
+            throw new DictConnectionException("Connection pool is closed");
+
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS))
+                throw new DictConnectionException("Timed out waiting for a connection to " + host + ":" + port);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DictConnectionException("Interrupted while waiting for a connection", e);
+        }
+
+        boolean success = false;
+        try {
+            PooledConnection pooled;
+            while ((pooled = pollIdle()) != null) {
+                long now = System.currentTimeMillis();
+                if (isExpired(pooled, now) ||
+                        (now - pooled.lastUsed > VALIDATION_INTERVAL_MILLIS && !pooled.connection.ping())) {
+                    pooled.connection.close();
+                    continue;
+                }
+                break;
+            }
+            if (pooled == null)
+                pooled = open();
+            // The database list may have been reloaded since this connection last used it
+            Map<String, Database> databases = databaseMap;
+            if (pooled.databases != databases) {
+                pooled.connection.shareDatabases(databases);
+                pooled.databases = databases;
+            }
+
+            synchronized (this) {
+                borrowed.put(pooled.connection, pooled);
+            }
+            success = true;
+            return pooled.connection;
+        } finally {
+            if (!success)
+                permits.release();
+        }
+    }
+
+    /** Hands a connection obtained through borrow back to the pool, so it can be reused by other callers.
+     *
+     * @param connection The connection being returned.
+     */
+    public void release(DictionaryConnection connection) {
+        PooledConnection pooled;
+        boolean keep;
+        synchronized (this) {
+            pooled = borrowed.remove(connection);
+            if (pooled == null)
+                return;
+            pooled.lastUsed = System.currentTimeMillis();
+            keep = !closed && !isExpired(pooled, pooled.lastUsed);
+            if (keep)
+                idle.push(pooled);
+        }
+        if (!keep)
+            connection.close();
+        permits.release();
+    }
+
+    /** Hands a connection obtained through borrow back to the pool after it failed, so that it is closed instead of
+     * being reused. This should be used whenever the state of the session is unknown, e.g., after a network error or a
+     * reply that wasn't read in full. A request the server merely rejected (DictRequestRejectedException) leaves the
+     * session usable, so the connection can be released instead.
+     *
+     * @param connection The connection being discarded.
+     */
+    public void invalidate(DictionaryConnection connection) {
+        synchronized (this) {
+            if (borrowed.remove(connection) == null)
+                return;
+        }
+        connection.close();
+        permits.release();
+    }
+
+    @Override
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        DictionaryConnection connection = borrow();
+        boolean reusable = false;
+        try {
+            Collection<Definition> definitions = connection.getDefinitions(word, database);
+            reusable = true;
+            return definitions;
+        } catch (DictRequestRejectedException e) {
+            // The server has answered in full, so the session can carry the next request
+            reusable = true;
+            throw e;
+        } finally {
+            giveBack(connection, reusable);
+        }
+    }
+
+    @Override
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        DictionaryConnection connection = borrow();
+        boolean reusable = false;
+        try {
+            Set<String> matches = connection.getMatchList(word, strategy, database);
+            reusable = true;
+            return matches;
+        } catch (DictRequestRejectedException e) {
+            reusable = true;
+            throw e;
+        } finally {
+            giveBack(connection, reusable);
+        }
+    }
+
+    @Override
+    public void streamDefinitions(String word, Database database, DefinitionListener listener) throws DictConnectionException {
+        DictionaryConnection connection = borrow();
+        boolean reusable = false;
+        try {
+            connection.streamDefinitions(word, database, listener);
+            reusable = true;
+        } catch (DictRequestRejectedException e) {
+            reusable = true;
+            throw e;
+        } finally {
+            giveBack(connection, reusable);
+        }
+    }
+
+    /** Retrieves the definitions for a batch of words over a single pooled connection, pipelining the requests.
+     *
+     * @param words The words whose definitions are to be retrieved.
+     * @param database The database to be used to retrieve the definitions (may be '*' or '!').
+     * @return A map from each word to the definitions returned by the server for it.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     * @see DictionaryConnection#defineAll(List, Database)
+     */
+    public Map<String, Collection<Definition>> defineAll(List<String> words, Database database) throws DictConnectionException {
+        DictionaryConnection connection = borrow();
+        boolean success = false;
+        try {
+            Map<String, Collection<Definition>> definitions = connection.defineAll(words, database);
+            success = true;
+            return definitions;
+        } finally {
+            giveBack(connection, success);
+        }
+    }
+
+    /** Retrieves the matches for a batch of word patterns over a single pooled connection, pipelining the requests.
+     *
+     * @param words    The word patterns to be matched.
+     * @param strategy The strategy to be used to retrieve the list of matches (e.g., prefix, exact).
+     * @param database The database to be used to retrieve the matches (may be '*' or '!').
+     * @return A map from each word to the set of matches returned by the server for it.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     * @see DictionaryConnection#matchAll(List, MatchingStrategy, Database)
+     */
+    public Map<String, Set<String>> matchAll(List<String> words, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        DictionaryConnection connection = borrow();
+        boolean success = false;
+        try {
+            Map<String, Set<String>> matches = connection.matchAll(words, strategy, database);
+            success = true;
+            return matches;
+        } finally {
+            giveBack(connection, success);
+        }
+    }
+
+    /** Returns the databases retrieved when the pool was created, or last reloaded. This doesn't require a connection
+     * to be borrowed.
+     *
+     * @return A collection of Database objects supported by the server.
+     */
+    @Override
+    public Collection<Database> getDatabaseList() {
+        return databaseMap.values();
+    }
+
+    /** Retrieves the list of databases from the server again, e.g., to check a list the pool was created with, and
+     * shares it with every connection from now on.
+     *
+     * @return A collection of Database objects supported by the server.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected value.
+     */
+    public Collection<Database> reloadDatabaseList() throws DictConnectionException {
+        DictionaryConnection connection = borrow();
+        boolean reusable = false;
+        try {
+            connection.reloadDatabaseList();
+            databaseMap = Collections.unmodifiableMap(connection.getDatabaseMap());
+            reusable = true;
+            return databaseMap.values();
+        } catch (DictRequestRejectedException e) {
+            reusable = true;
+            throw e;
+        } finally {
+            giveBack(connection, reusable);
+        }
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        DictionaryConnection connection = borrow();
+        boolean reusable = false;
+        try {
+            Set<MatchingStrategy> strategies = connection.getStrategyList();
+            reusable = true;
+            return strategies;
+        } catch (DictRequestRejectedException e) {
+            reusable = true;
+            throw e;
+        } finally {
+            giveBack(connection, reusable);
+        }
+    }
+
+    /** Closes every idle connection and stops the pool. Connections that are currently borrowed are closed as soon as
+     * they are returned.
+     */
+    @Override
+    public void close() {
+        List<PooledConnection> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+        }
+        if (evictor != null)
+            evictor.shutdownNow();
+        for (PooledConnection pooled : toClose)
+            pooled.connection.close();
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    public synchronized int getActiveCount() {
+        return borrowed.size();
+    }
+
+    private void giveBack(DictionaryConnection connection, boolean success) {
+        if (success)
+            release(connection);
+        else
+            invalidate(connection);
+    }
+
+    private synchronized PooledConnection pollIdle() {
+        return idle.poll();
+    }
+
+    private PooledConnection open() throws DictConnectionException {
+        Map<String, Database> databases = databaseMap;
+        DictionaryConnection connection = new DictionaryConnection(host, port);
+        connection.shareDatabases(databases);
+        return new PooledConnection(connection, databases);
+    }
+
+    /** Opens connections until the pool is full. A connection that can't be opened now will be opened when it is
+     * first needed instead.
+     */
+    private void warmUp() {
+        for (int i = 1; i < poolSize; i++) {
+            PooledConnection pooled;
+            try {
+                pooled = open();
+            } catch (DictConnectionException e) {
+                return;
+            }
+            synchronized (this) {
+                if (!closed && idle.size() + borrowed.size() < poolSize) {
+                    idle.push(pooled);
+                    continue;
+                }
+            }
+            // Callers have opened connections of their own meanwhile
+            pooled.connection.close();
+            return;
+        }
+    }
+
+    private boolean isExpired(PooledConnection pooled, long now) {
+        return now - pooled.created > maxLifetimeMillis || now - pooled.lastUsed > maxIdleMillis;
+    }
+
+    /** Closes idle connections that have gone unused for longer than the maximum idle time, or that have been open for
+     * longer than the maximum lifetime.
+     */
+    private void evict() {
+        List<PooledConnection> expired = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Iterator<PooledConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                PooledConnection pooled = it.next();
+                if (isExpired(pooled, now)) {
+                    it.remove();
+                    expired.add(pooled);
+                }
+            }
+        }
+        for (PooledConnection pooled : expired)
+            pooled.connection.close();
+    }
+
+    private static class PooledConnection {
+        private final DictionaryConnection connection;
+        private final long created;
+        private long lastUsed;
+        // Database list last shared with the connection
+        private Map<String, Database> databases;
+
+        private PooledConnection(DictionaryConnection connection, Map<String, Database> databases) {
+            this.connection = connection;
+            this.databases = databases;
+            this.created = this.lastUsed = System.currentTimeMillis();
+        }
+    }
+}
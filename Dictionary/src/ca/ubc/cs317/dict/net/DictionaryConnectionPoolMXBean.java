@@ -0,0 +1,17 @@
+package ca.ubc.cs317.dict.net;
+
+/**
+ * Management interface of DictionaryConnectionPool.
+ */
+public interface DictionaryConnectionPoolMXBean {
+
+    String getHost();
+
+    int getPort();
+
+    int getPoolSize();
+
+    int getIdleCount();
+
+    int getActiveCount();
+}
@@ -0,0 +1,145 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * DictionaryClient that answers DEFINE requests on the special databases '*' and '!' by sending one request per
+ * database concurrently, instead of letting the server search every database in turn over a single connection. The
+ * wrapped client must support concurrent requests, e.g., a DictionaryConnectionPool, and its pool size bounds how many
+ * of these requests are actually on the wire at once.
+ * <p>
+ * For '*', the definitions are merged back in the order in which the server lists its databases, as the server itself
+ * would return them, so the latency is roughly that of the slowest database rather than the sum of all of them. For
+ * '!', the definitions of the first database in that order that has any are returned as soon as every database before
+ * it is known to have none, and the requests to the remaining databases are cancelled.
+ * <p>
+ * All other requests are forwarded to the wrapped client unchanged.
+ */
+public class FanOutDictionaryClient implements DictionaryClient {
+
+    private final DictionaryClient client;
+    private final ExecutorService executor;
+
+    /** Creates a fan-out client.
+     *
+     * @param client The client the per-database requests are sent through. It is closed by close.
+     * @param parallelism Maximum number of per-database requests running at once, usually the number of connections
+     *                    the wrapped client can use.
+     */
+    public FanOutDictionaryClient(DictionaryClient client, int parallelism) {
+        this.client = client;
+        this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "dict-fan-out");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public FanOutDictionaryClient(DictionaryClient client) {
+        this(client, DictionaryConnectionPool.DEFAULT_POOL_SIZE);
+    }
+
+    @Override
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        if (!isSpecial(database))
+            return client.getDefinitions(word, database);
+
+        DefinitionCollector collector = new DefinitionCollector();
+        fanOut(word, database, collector);
+        return collector.getDefinitions();
+    }
+
+    /** Streams the definitions of a word. For '*', the definitions of each database are handed to the listener once
+     * that database and every database before it have been searched, so the first ones arrive without waiting for the
+     * slowest database.
+     */
+    @Override
+    public void streamDefinitions(String word, Database database, DefinitionListener listener) throws DictConnectionException {
+        if (isSpecial(database))
+            fanOut(word, database, listener);
+        else
+            client.streamDefinitions(word, database, listener);
+    }
+
+    @Override
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException {
+        return client.getMatchList(word, strategy, database);
+    }
+
+    @Override
+    public Collection<Database> getDatabaseList() throws DictConnectionException {
+        return client.getDatabaseList();
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        return client.getStrategyList();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        client.close();
+    }
+
+    /** Sends one DEFINE request per database and hands the definitions to the listener in database order.
+     *
+     * @param word The word whose definitions are requested.
+     * @param database '*' for the definitions in every database, '!' for those in the first database that has any.
+     * @param listener Receives the definitions, from the calling thread.
+     * @throws DictConnectionException If any of the requests needed for the reply failed.
+     */
+    private void fanOut(final String word, Database database, DefinitionListener listener) throws DictConnectionException {
+        boolean first = database.getName().equals("!");
+        List<Future<Collection<Definition>>> lookups = new ArrayList<>();
+        try {
+            for (final Database db : client.getDatabaseList()) {
+                lookups.add(executor.submit(new Callable<Collection<Definition>>() {
+                    @Override
+                    public Collection<Definition> call() throws DictConnectionException {
+                        return client.getDefinitions(word, db);
+                    }
+                }));
+            }
+
+            for (Future<Collection<Definition>> lookup : lookups) {
+                Collection<Definition> definitions = lookup.get();
+                for (Definition definition : definitions)
+                    listener.definitionReceived(definition);
+                if (first && !definitions.isEmpty())
+                    return;
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DictConnectionException)
+                throw (DictConnectionException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new DictConnectionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DictConnectionException("Interrupted while waiting for a reply", e);
+        } finally {
+            // Lookups that are no longer needed give up their place in the queue or their wait for a connection
+            for (Future<Collection<Definition>> lookup : lookups)
+                lookup.cancel(true);
+        }
+    }
+
+    private static boolean isSpecial(Database database) {
+        return database.getName().equals("*") || database.getName().equals("!");
+    }
+}
@@ -0,0 +1,348 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.exception.DictServerUnavailableException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.util.LatencyHistogram;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Spreads requests over several equivalent DICT servers, each reached through its own client (usually a
+ * DictionaryConnectionPool), to cut the tail latency caused by a single slow or failing server.
+ * <p>
+ * Every request is first sent to the server that has recently been the fastest. If it hasn't answered after the
+ * hedge percentile of that server's recent latencies, the same request is sent to the next server as well, and
+ * whichever reply arrives first is used. If a server replies 420 or 421, or the request fails with a network error
+ * such as a socket timeout, the request is retried on the next server and the failed one is avoided for a while.
+ * Other errors, such as an invalid database, would be the same on every server and are thrown right away.
+ * <p>
+ * The servers are assumed to serve the same databases and strategies.
+ */
+public class MultiEndpointClient implements DictionaryClient {
+
+    public static final double DEFAULT_HEDGE_PERCENTILE = 95;
+
+    // Hedge delay used until a server has enough latency samples for a meaningful percentile
+    private static final long DEFAULT_HEDGE_DELAY_MICROS = 250_000;
+    private static final int MIN_SAMPLES = 20;
+    // Number of samples after which a server's latency window is replaced, so old latencies are forgotten
+    private static final int WINDOW_SIZE = 1024;
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+    // Time during which a server that failed is only used once all other servers have been tried
+    private static final long DOWN_MILLIS = 5_000;
+
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final double hedgePercentile;
+    private final ExecutorService executor;
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+
+    /** Creates a client over several equivalent servers.
+     *
+     * @param clients One client per server, in order of preference when none of them has been used yet. They are
+     *                closed by close.
+     * @param hedgePercentile Percentile of a server's recent latencies after which a hedged request is sent to the
+     *                        next server, or 100 or more to never hedge.
+     */
+    public MultiEndpointClient(List<? extends DictionaryClient> clients, double hedgePercentile) {
+        if (clients.isEmpty())
+            throw new IllegalArgumentException("At least one client is required");
+        for (DictionaryClient client : clients)
+            endpoints.add(new Endpoint(client));
+        this.hedgePercentile = hedgePercentile;
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "dict-multi-endpoint");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public MultiEndpointClient(List<? extends DictionaryClient> clients) {
+        this(clients, DEFAULT_HEDGE_PERCENTILE);
+    }
+
+    @Override
+    public Collection<Definition> getDefinitions(final String word, final Database database) throws DictConnectionException {
+        return execute(new Call<Collection<Definition>>() {
+            @Override
+            Collection<Definition> call(DictionaryClient client) throws DictConnectionException {
+                return client.getDefinitions(word, database);
+            }
+        });
+    }
+
+    /** Streams the definitions of a word from whichever server delivers the first one. Definitions from any other
+     * server are dropped, and so is a failure of any other server once one has delivered a definition. A failure of the
+     * server whose definitions reached the listener is thrown instead of being retried, as the listener would
+     * otherwise receive the same definitions twice.
+     */
+    @Override
+    public void streamDefinitions(final String word, final Database database, final DefinitionListener listener) throws DictConnectionException {
+        final AtomicReference<DefinitionListener> owner = new AtomicReference<>();
+        execute(new Call<Boolean>() {
+            private volatile boolean ownerFailed;
+
+            @Override
+            Boolean call(DictionaryClient client) throws DictConnectionException {
+                DefinitionListener attempt = new DefinitionListener() {
+                    @Override
+                    public void definitionReceived(Definition definition) {
+                        if (owner.compareAndSet(null, this) || owner.get() == this)
+                            listener.definitionReceived(definition);
+                    }
+                };
+                try {
+                    client.streamDefinitions(word, database, attempt);
+                } catch (DictConnectionException e) {
+                    DefinitionListener current = owner.get();
+                    if (current == attempt)
+                        ownerFailed = true;
+                    else if (current != null)
+                        // Another server is delivering the definitions; this one's failure doesn't matter
+                        return null;
+                    throw e;
+                }
+                // Only a server whose definitions reached the listener, or any server if none had definitions, counts
+                DefinitionListener current = owner.get();
+                return current == null || current == attempt ? Boolean.TRUE : null;
+            }
+
+            @Override
+            boolean mayRetry() {
+                return !ownerFailed;
+            }
+        });
+    }
+
+    @Override
+    public Set<String> getMatchList(final String word, final MatchingStrategy strategy, final Database database) throws DictConnectionException {
+        return execute(new Call<Set<String>>() {
+            @Override
+            Set<String> call(DictionaryClient client) throws DictConnectionException {
+                return client.getMatchList(word, strategy, database);
+            }
+        });
+    }
+
+    @Override
+    public Collection<Database> getDatabaseList() throws DictConnectionException {
+        return execute(new Call<Collection<Database>>() {
+            @Override
+            Collection<Database> call(DictionaryClient client) throws DictConnectionException {
+                return client.getDatabaseList();
+            }
+        });
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        return execute(new Call<Set<MatchingStrategy>>() {
+            @Override
+            Set<MatchingStrategy> call(DictionaryClient client) throws DictConnectionException {
+                return client.getStrategyList();
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (Endpoint endpoint : endpoints)
+            endpoint.client.close();
+    }
+
+    /** Returns the number of hedged requests sent so far.
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /** Returns the number of requests retried on another server after a failure so far.
+     */
+    public long getFailoverCount() {
+        return failovers.get();
+    }
+
+    /** Runs a call on the preferred server, hedging it on the next server if it is slow and retrying it on the next
+     * server if it fails in a way another server might not.
+     *
+     * @param call The request to be sent.
+     * @return The result of the first attempt that completed.
+     * @throws DictConnectionException If the call failed with an error that can't be retried, or failed on every
+     * server.
+     */
+    private <T> T execute(Call<T> call) throws DictConnectionException {
+        List<Endpoint> order = ordered();
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        List<Future<T>> attempts = new ArrayList<>();
+        DictConnectionException failure = null;
+        int next = 0;
+        int running = 0;
+        long hedgeDelay = 0;
+
+        try {
+            attempts.add(completion.submit(attempt(call, order.get(next))));
+            hedgeDelay = order.get(next++).hedgeDelayMicros();
+            running++;
+
+            while (running > 0) {
+                Future<T> done;
+                if (running == 1 && next < order.size() && hedgePercentile < 100) {
+                    done = completion.poll(hedgeDelay, TimeUnit.MICROSECONDS);
+                    if (done == null) {
+                        // The only attempt in flight is slower than usual; race it against the next server
+                        hedges.incrementAndGet();
+                        attempts.add(completion.submit(attempt(call, order.get(next++))));
+                        running++;
+                        continue;
+                    }
+                } else
+                    done = completion.take();
+                running--;
+
+                try {
+                    T result = done.get();
+                    if (result != null)
+                        return result;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException)
+                        throw (RuntimeException) e.getCause();
+                    if (e.getCause() instanceof Error)
+                        throw (Error) e.getCause();
+                    DictConnectionException cause = e.getCause() instanceof DictConnectionException ?
+                            (DictConnectionException) e.getCause() : new DictConnectionException(e.getCause());
+                    if (!isRetryable(cause) || !call.mayRetry())
+                        throw cause;
+                    failure = cause;
+                    if (running == 0 && next < order.size()) {
+                        failovers.incrementAndGet();
+                        attempts.add(completion.submit(attempt(call, order.get(next))));
+                        hedgeDelay = order.get(next++).hedgeDelayMicros();
+                        running++;
+                    }
+                }
+            }
+            throw failure != null ? failure : new DictConnectionException("No server completed the request");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DictConnectionException("Interrupted while waiting for a reply", e);
+        } finally {
+            // Any attempt still running lost the race; interrupt it if it is still waiting for a connection
+            for (Future<T> attempt : attempts)
+                attempt.cancel(true);
+        }
+    }
+
+    private <T> Callable<T> attempt(final Call<T> call, final Endpoint endpoint) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws DictConnectionException {
+                long started = System.nanoTime();
+                try {
+                    T result = call.call(endpoint.client);
+                    endpoint.recordLatency(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+                    return result;
+                } catch (DictConnectionException e) {
+                    if (isRetryable(e))
+                        endpoint.downUntil = System.currentTimeMillis() + DOWN_MILLIS;
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /** Returns the servers in the order they should be tried: servers that haven't failed recently first, each group
+     * sorted by median recent latency.
+     */
+    private List<Endpoint> ordered() {
+        final long now = System.currentTimeMillis();
+        final Map<Endpoint, Long> medians = new HashMap<>();
+        for (Endpoint endpoint : endpoints)
+            medians.put(endpoint, endpoint.window().getValueAtPercentile(50));
+
+        List<Endpoint> order = new ArrayList<>(endpoints);
+        Collections.sort(order, new Comparator<Endpoint>() {
+            @Override
+            public int compare(Endpoint a, Endpoint b) {
+                boolean aDown = a.downUntil > now;
+                boolean bDown = b.downUntil > now;
+                if (aDown != bDown)
+                    return aDown ? 1 : -1;
+                return Long.compare(medians.get(a), medians.get(b));
+            }
+        });
+        return order;
+    }
+
+    /** Checks whether a failure is specific to the server that returned it: the server was unavailable, or the
+     * connection to it failed or timed out.
+     */
+    private static boolean isRetryable(DictConnectionException e) {
+        if (e instanceof DictServerUnavailableException)
+            return true;
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException)
+                return true;
+        }
+        return false;
+    }
+
+    private abstract static class Call<T> {
+
+        /** Sends the request to one server.
+         *
+         * @return The result, or null if this attempt was superseded by another one and its result must be ignored.
+         */
+        abstract T call(DictionaryClient client) throws DictConnectionException;
+
+        /** Checks whether a failed attempt may still be retried on another server.
+         */
+        boolean mayRetry() {
+            return true;
+        }
+    }
+
+    private class Endpoint {
+        private final DictionaryClient client;
+        private volatile LatencyHistogram filling = new LatencyHistogram(HIGHEST_LATENCY_MICROS);
+        private volatile LatencyHistogram recent;
+        private volatile long downUntil;
+
+        private Endpoint(DictionaryClient client) {
+            this.client = client;
+        }
+
+        private void recordLatency(long micros) {
+            LatencyHistogram histogram = filling;
+            histogram.recordValue(micros);
+            if (histogram.getTotalCount() >= WINDOW_SIZE && filling == histogram) {
+                recent = histogram;
+                filling = new LatencyHistogram(HIGHEST_LATENCY_MICROS);
+            }
+        }
+
+        /** Returns the most recent full window of latencies, or the one being filled if there is none yet.
+         */
+        private LatencyHistogram window() {
+            LatencyHistogram histogram = recent;
+            return histogram != null ? histogram : filling;
+        }
+
+        private long hedgeDelayMicros() {
+            LatencyHistogram histogram = window();
+            if (histogram.getTotalCount() < MIN_SAMPLES)
+                return DEFAULT_HEDGE_DELAY_MICROS;
+            return Math.max(1, histogram.getValueAtPercentile(hedgePercentile));
+        }
+    }
+}
@@ -0,0 +1,677 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.exception.DictRequestRejectedException;
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.util.AtomScanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * DICT client that drives several sessions to the same server from a single I/O thread, using non-blocking channels
+ * and a Selector instead of one blocked thread per socket. Requests may be submitted from any thread; each one is
+ * assigned to the least busy session, pipelined behind any request already waiting on it, and completed through a
+ * CompletableFuture once its reply has been parsed. Replies are interpreted as in DictionaryConnection, including the
+ * dot-unstuffing of text lines done by ReplyDecoder.
+ */
+public class NioDictionaryClient {
+
+    private static final int DEFAULT_PORT = 2628;
+
+    public static final int DEFAULT_SESSIONS = 8;
+
+    // Same read timeout used by DictionaryConnection, applied to sessions that are waiting on a reply
+    private static final long READ_TIMEOUT_MILLIS = 2500;
+    private static final long CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final String host;
+    private final int port;
+    private final InetSocketAddress address;
+    private final int sessionCount;
+    private final Selector selector;
+    private final Thread ioThread;
+
+    private final Queue<Request<?>> submissions = new ConcurrentLinkedQueue<>();
+    private final List<Session> sessions = new ArrayList<>(); // Only used by the I/O thread
+
+    private volatile Map<String, Database> databaseMap = Collections.emptyMap();
+    private volatile boolean running = true;
+
+    /** Starts the I/O thread and establishes the first session with a DICT server, retrieving its list of databases.
+     * Further sessions, up to sessionCount, are opened as soon as all existing ones have a request in flight.
+     *
+     * @param host Name of the host where the DICT server is running
+     * @param port Port number used by the DICT server
+     * @param sessionCount Maximum number of sessions multiplexed by the I/O thread
+     * @throws DictConnectionException If the host does not exist, the connection can't be established, or the messages
+     * don't match their expected value.
+     */
+    public NioDictionaryClient(String host, int port, int sessionCount) throws DictConnectionException {
+        if (sessionCount < 1)
+            throw new IllegalArgumentException("Session count must be at least 1");
+
+        this.host = host;
+        this.port = port;
+        this.sessionCount = sessionCount;
+
+        // Resolved once here, as a lookup on the I/O thread would hold up every session while it waits for DNS
+        this.address = new InetSocketAddress(host, port);
+        if (address.isUnresolved())
+            throw new DictConnectionException("Couldn't get I/O for the connection to:" + host + ":" + port);
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new DictConnectionException("Couldn't open selector", e);
+        }
+
+        ioThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ioLoop();
+            }
+        }, "dict-nio-" + host);
+        ioThread.setDaemon(true);
+        ioThread.start();
+
+        // Retrieve the list of databases once, so DEFINE replies on every session can be mapped to Database objects
+        DatabasesRequest bootstrap = submit(new DatabasesRequest());
+        try {
+            databaseMap = Collections.unmodifiableMap(bootstrap.future.get(CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (ExecutionException e) {
+            close();
+            if (e.getCause() instanceof DictConnectionException)
+                throw (DictConnectionException) e.getCause();
+            throw new DictConnectionException("Couldn't get I/O for the connection to:" + host + ":" + port, e.getCause());
+        } catch (InterruptedException | TimeoutException e) {
+            close();
+            throw new DictConnectionException("Couldn't get I/O for the connection to:" + host + ":" + port, e);
+        }
+    }
+
+    /** Starts the I/O thread and establishes the first session with a DICT server using the default DICT port number
+     * and number of sessions.
+     *
+     * @param host Name of the host where the DICT server is running
+     * @throws DictConnectionException If the host does not exist, the connection can't be established, or the messages
+     * don't match their expected value.
+     */
+    public NioDictionaryClient(String host) throws DictConnectionException {
+        this(host, DEFAULT_PORT, DEFAULT_SESSIONS);
+    }
+
+    /** Requests all definitions for a specific word.
+     *
+     * @param word The word whose definition is to be retrieved.
+     * @param database The database to be used to retrieve the definition (may be '*' or '!').
+     * @return A future completed with the definitions returned by the server, or with a DictConnectionException.
+     */
+    public CompletableFuture<Collection<Definition>> getDefinitionsAsync(String word, Database database) {
+        word = word.trim();
+        if (word.isEmpty())
+            return CompletableFuture.<Collection<Definition>>completedFuture(new ArrayList<Definition>());
+        return submit(new DefineRequest(word, database)).future;
+    }
+
+    /** Requests a list of matches for a specific word pattern.
+     *
+     * @param word     The word whose definition is to be retrieved.
+     * @param strategy The strategy to be used to retrieve the list of matches (e.g., prefix, exact).
+     * @param database The database to be used to retrieve the definition (may be '*' or '!').
+     * @return A future completed with the matches returned by the server, or with a DictConnectionException.
+     */
+    public CompletableFuture<Set<String>> getMatchListAsync(String word, MatchingStrategy strategy, Database database) {
+        word = word.trim();
+        if (word.isEmpty())
+            return CompletableFuture.<Set<String>>completedFuture(new LinkedHashSet<String>());
+        return submit(new MatchRequest(word, strategy, database)).future;
+    }
+
+    /** Returns the databases retrieved when the client was created.
+     *
+     * @return An already completed future with the Database objects supported by the server.
+     */
+    public CompletableFuture<Collection<Database>> getDatabaseListAsync() {
+        return CompletableFuture.completedFuture(databaseMap.values());
+    }
+
+    /** Requests the list of all valid matching strategies supported by the server.
+     *
+     * @return A future completed with the MatchingStrategy objects supported by the server.
+     */
+    public CompletableFuture<Set<MatchingStrategy>> getStrategyListAsync() {
+        return submit(new StrategiesRequest()).future;
+    }
+
+    /** Stops the I/O thread, sends QUIT on every session and closes them. Requests still waiting for a reply are
+     * completed with a DictConnectionException.
+     */
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    private <R extends Request<?>> R submit(R request) {
+        if (!running) {
+            request.future.completeExceptionally(new DictConnectionException("Client is closed"));
+        } else {
+            submissions.add(request);
+            selector.wakeup();
+        }
+        return request;
+    }
+
+    private void ioLoop() {
+        try {
+            while (running) {
+                selector.select(READ_TIMEOUT_MILLIS / 2);
+                dispatchSubmissions();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Session session = (Session) key.attachment();
+                    try {
+                        if (key.isValid() && key.isConnectable())
+                            session.finishConnect();
+                        if (key.isValid() && key.isReadable())
+                            session.read();
+                        if (key.isValid() && key.isWritable())
+                            session.write();
+                    } catch (IOException e) {
+                        fail(session, new DictConnectionException("Network error on connection to " + host + ":" + port, e));
+                    } catch (DictConnectionException e) {
+                        fail(session, e);
+                    }
+                }
+
+                expireSessions();
+            }
+        } catch (IOException e) {
+            // The selector itself failed; everything still pending is failed below
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void dispatchSubmissions() {
+        Request<?> request;
+        while ((request = submissions.poll()) != null) {
+            if (request.future.isDone())
+                continue; // Cancelled before it was sent
+            try {
+                chooseSession().enqueue(request);
+            } catch (IOException e) {
+                request.future.completeExceptionally(
+                        new DictConnectionException("Couldn't get I/O for the connection to:" + host + ":" + port, e));
+            }
+        }
+    }
+
+    /** Picks the session with the fewest requests in flight, opening a new session instead if all existing ones are
+     * busy and the maximum number of sessions hasn't been reached.
+     */
+    private Session chooseSession() throws IOException {
+        Session best = null;
+        for (Session session : sessions) {
+            if (best == null || session.pending.size() < best.pending.size())
+                best = session;
+        }
+        if ((best == null || !best.pending.isEmpty()) && sessions.size() < sessionCount) {
+            best = new Session();
+            sessions.add(best);
+        }
+        return best;
+    }
+
+    private void expireSessions() {
+        long now = System.currentTimeMillis();
+        for (Session session : new ArrayList<>(sessions)) {
+            if (!session.pending.isEmpty() && now - session.lastActivity > READ_TIMEOUT_MILLIS)
+                fail(session, new DictConnectionException("Timed out waiting for a reply from " + host + ":" + port));
+        }
+    }
+
+    /** Closes a session whose state is no longer known, failing every request that was waiting on it.
+     */
+    private void fail(Session session, DictConnectionException cause) {
+        sessions.remove(session);
+        session.close();
+        for (Request<?> request : session.pending)
+            request.future.completeExceptionally(cause);
+        session.pending.clear();
+    }
+
+    private void shutdown() {
+        DictConnectionException closed = new DictConnectionException("Client is closed");
+        for (Session session : new ArrayList<>(sessions)) {
+            session.quit();
+            fail(session, closed);
+        }
+        Request<?> request;
+        while ((request = submissions.poll()) != null)
+            request.future.completeExceptionally(closed);
+        try {
+            selector.close();
+        } catch (IOException e) {
+        }
+    }
+
+    private class Session {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final Deque<Request<?>> pending = new ArrayDeque<>();
+        private final Deque<ByteBuffer> writes = new ArrayDeque<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+        private long lastActivity = System.currentTimeMillis();
+
+        private Session() throws IOException {
+            channel = SocketChannel.open();
+            try {
+                channel.configureBlocking(false);
+                boolean connected = channel.connect(address);
+                key = channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            // The welcome message is the first reply on every session
+            pending.add(new BannerRequest());
+        }
+
+        private void enqueue(Request<?> request) {
+            if (pending.isEmpty())
+                lastActivity = System.currentTimeMillis();
+            pending.add(request);
+            // DICT commands are terminated by CRLF
+            writes.add(ByteBuffer.wrap((request.command() + "\r\n").getBytes(StandardCharsets.UTF_8)));
+            if (channel.isConnected())
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        private void finishConnect() throws IOException {
+            channel.finishConnect();
+            lastActivity = System.currentTimeMillis();
+            key.interestOps(SelectionKey.OP_READ | (writes.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+        }
+
+        private void write() throws IOException {
+            while (!writes.isEmpty()) {
+                ByteBuffer buffer = writes.peek();
+                channel.write(buffer);
+                if (buffer.hasRemaining())
+                    return; // Socket buffer is full, wait for the next OP_WRITE
+                writes.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private void read() throws IOException, DictConnectionException {
+            int count = channel.read(readBuffer);
+            if (count < 0)
+                throw new DictConnectionException("Connection closed by server");
+            lastActivity = System.currentTimeMillis();
+
+            // Split what was received into lines, keeping any incomplete line for the next read
+            readBuffer.flip();
+            byte[] bytes = readBuffer.array();
+            int start = readBuffer.position();
+            for (int i = start; i < readBuffer.limit(); i++) {
+                if (bytes[i] == '\n') {
+                    partialLine.write(bytes, start, i - start);
+                    String line = partialLine.toString("UTF-8");
+                    partialLine.reset();
+                    if (line.endsWith("\r"))
+                        line = line.substring(0, line.length() - 1);
+                    deliver(line);
+                    start = i + 1;
+                }
+            }
+            partialLine.write(bytes, start, readBuffer.limit() - start);
+            readBuffer.clear();
+        }
+
+        private void deliver(String line) throws DictConnectionException {
+            Request<?> request = pending.peek();
+            if (request == null)
+                throw new DictConnectionException("Unexpected line received: " + line);
+            boolean complete;
+            try {
+                complete = request.onLine(line);
+            } catch (RuntimeException e) {
+                throw new DictConnectionException("Invalid reply received (" + line + ")", e);
+            }
+            if (complete)
+                pending.poll();
+        }
+
+        private void quit() {
+            try {
+                if (channel.isConnected())
+                    channel.write(ByteBuffer.wrap("QUIT\r\n".getBytes(StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+            }
+        }
+
+        private void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /** A command sent to the server, together with the state needed to parse its reply one line at a time. Errors that
+     * leave the session in a known state complete the future exceptionally and end the reply; errors that don't are
+     * thrown, which closes the session.
+     */
+    private abstract static class Request<T> {
+        protected final CompletableFuture<T> future = new CompletableFuture<>();
+        // Reused for every line of the reply
+        protected final AtomScanner atoms = new AtomScanner();
+
+        abstract String command();
+
+        /** Handles the next line of the reply.
+         *
+         * @return true if this was the last line of the reply.
+         */
+        abstract boolean onLine(String line) throws DictConnectionException;
+
+        protected boolean complete(T result) {
+            future.complete(result);
+            return true;
+        }
+
+        protected boolean fail(DictConnectionException e) {
+            future.completeExceptionally(e);
+            return true;
+        }
+
+        /** Undoes the dot-stuffing of a line in a text block, the same way ReplyDecoder does: the server doubles a
+         * leading period so that the line can't be mistaken for the end of the block.
+         *
+         * @return The line as it was before stuffing, or null if it is the "." that terminates the block.
+         */
+        protected static String unstuff(String line) {
+            if (line.startsWith(".")) {
+                if (line.length() == 1)
+                    return null;
+                if (line.charAt(1) == '.')
+                    return line.substring(1);
+            }
+            return line;
+        }
+
+        protected void expectTermination(String line, String what) throws DictConnectionException {
+            int terminate = 250;
+            int statusCode = Status.parse(line).getStatusCode();
+            if (statusCode != terminate) {
+                throw new DictConnectionException("Expected termination status for " + what + ": " + terminate + System.lineSeparator() +
+                        "Received termination status: " + statusCode);
+            }
+        }
+    }
+
+    private static class BannerRequest extends Request<Void> {
+        @Override
+        String command() {
+            return null;
+        }
+
+        @Override
+        boolean onLine(String line) throws DictConnectionException {
+            int success = 220;
+            int denied = 530;
+
+            int statusCode = Status.parse(line).getStatusCode();
+            DictionaryConnection.validateGeneralStatus(statusCode);
+            if (statusCode == denied)
+                throw new DictConnectionException("Access denied");
+            if (statusCode != success)
+                throw new DictConnectionException("Invalid status code received for connection: " + statusCode);
+            return complete(null);
+        }
+    }
+
+    private class DefineRequest extends Request<Collection<Definition>> {
+        private final String word;
+        private final Database database;
+        private final Collection<Definition> set = new ArrayList<>();
+        private boolean started = false;
+        private Definition current = null;
+
+        private DefineRequest(String word, Database database) {
+            this.word = word;
+            this.database = database;
+        }
+
+        @Override
+        String command() {
+            return DictionaryConnection.defineCommand(word, database);
+        }
+
+        @Override
+        boolean onLine(String line) throws DictConnectionException {
+            int noMatch = 552;
+            int success = 150;
+            int invalidDb = 550;
+
+            if (!started) {
+                int statusCode = Status.parse(line).getStatusCode();
+                if (statusCode == noMatch)
+                    return complete(set);
+                try {
+                    DictionaryConnection.validateGeneralStatus(statusCode);
+                } catch (DictConnectionException e) {
+                    return fail(e);
+                }
+                if (statusCode == invalidDb)
+                    return fail(new DictRequestRejectedException("Invalid database input", statusCode));
+                if (statusCode != success)
+                    return fail(new DictConnectionException("Invalid status code received for definition: " + statusCode));
+                started = true;
+                return false;
+            }
+
+            if (current != null) {
+                // Inside a definition body, which ends with a line containing a single period
+                String text = unstuff(line);
+                if (text == null) {
+                    set.add(current);
+                    current = null;
+                } else {
+                    current.appendDefinition(text);
+                }
+                return false;
+            }
+
+            // New definition line in form: 151 "returnedWord" returnedDb, or the final 250 status
+            atoms.reset(line);
+            if (atoms.next() && atoms.atomEquals("151")) {
+                String returnedWord = atoms.nextAtom();
+                String returnedDb = atoms.nextAtom();
+                current = new Definition(returnedWord, databaseMap.get(returnedDb));
+                return false;
+            }
+            expectTermination(line, "definitions");
+            return complete(set);
+        }
+    }
+
+    private static class MatchRequest extends Request<Set<String>> {
+        private final String word;
+        private final MatchingStrategy strategy;
+        private final Database database;
+        private final Set<String> set = new LinkedHashSet<>();
+        private boolean started = false;
+        private boolean listDone = false;
+
+        private MatchRequest(String word, MatchingStrategy strategy, Database database) {
+            this.word = word;
+            this.strategy = strategy;
+            this.database = database;
+        }
+
+        @Override
+        String command() {
+            return DictionaryConnection.matchCommand(word, strategy, database);
+        }
+
+        @Override
+        boolean onLine(String line) throws DictConnectionException {
+            int noMatch = 552;
+            int success = 152;
+            int invalidDb = 550;
+            int invalidStrat = 551;
+
+            if (!started) {
+                int statusCode = Status.parse(line).getStatusCode();
+                try {
+                    DictionaryConnection.validateGeneralStatus(statusCode);
+                } catch (DictConnectionException e) {
+                    return fail(e);
+                }
+                if (statusCode == noMatch)
+                    return complete(set);
+                if (statusCode == invalidDb)
+                    return fail(new DictRequestRejectedException("Invalid database input", statusCode));
+                if (statusCode == invalidStrat)
+                    return fail(new DictRequestRejectedException("Invalid strategy input", statusCode));
+                if (statusCode != success)
+                    return fail(new DictConnectionException("Invalid status code received for matches: " + statusCode));
+                started = true;
+                return false;
+            }
+
+            if (!listDone) {
+                // Lines in the form: dictName "matchWord"
+                String text = unstuff(line);
+                if (text == null)
+                    listDone = true;
+                else if (atoms.reset(text).skip(1) && atoms.next())
+                    set.add(atoms.atom());
+                return false;
+            }
+
+            expectTermination(line, "matches");
+            return complete(set);
+        }
+    }
+
+    private static class DatabasesRequest extends Request<Map<String, Database>> {
+        private final Map<String, Database> map = new LinkedHashMap<>();
+        private boolean started = false;
+        private boolean listDone = false;
+
+        @Override
+        String command() {
+            return "SHOW DATABASES";
+        }
+
+        @Override
+        boolean onLine(String line) throws DictConnectionException {
+            int noMatch = 554;
+            int success = 110;
+
+            if (!started) {
+                int statusCode = Status.parse(line).getStatusCode();
+                try {
+                    DictionaryConnection.validateGeneralStatus(statusCode);
+                } catch (DictConnectionException e) {
+                    return fail(e);
+                }
+                if (statusCode == noMatch)
+                    return complete(map);
+                if (statusCode != success)
+                    return fail(new DictConnectionException("Invalid status code received for dictionary: " + statusCode));
+                started = true;
+                return false;
+            }
+
+            if (!listDone) {
+                // Lines in the form: dbname "dbDescription"
+                String text = unstuff(line);
+                if (text == null) {
+                    listDone = true;
+                } else {
+                    String dbName = atoms.reset(text).nextAtom();
+                    map.put(dbName, new Database(dbName, atoms.nextAtom()));
+                }
+                return false;
+            }
+
+            expectTermination(line, "dictionary");
+            return complete(map);
+        }
+    }
+
+    private static class StrategiesRequest extends Request<Set<MatchingStrategy>> {
+        private final Set<MatchingStrategy> set = new LinkedHashSet<>();
+        private boolean started = false;
+        private boolean listDone = false;
+
+        @Override
+        String command() {
+            return "SHOW STRAT";
+        }
+
+        @Override
+        boolean onLine(String line) throws DictConnectionException {
+            int noMatch = 555;
+            int success = 111;
+
+            if (!started) {
+                int statusCode = Status.parse(line).getStatusCode();
+                try {
+                    DictionaryConnection.validateGeneralStatus(statusCode);
+                } catch (DictConnectionException e) {
+                    return fail(e);
+                }
+                if (statusCode == noMatch)
+                    return complete(set);
+                if (statusCode != success)
+                    return fail(new DictConnectionException("Invalid status code received for strategy: " + statusCode));
+                started = true;
+                return false;
+            }
+
+            if (!listDone) {
+                // Lines in the form: stratName "stratDescription"
+                String text = unstuff(line);
+                if (text == null) {
+                    listDone = true;
+                } else {
+                    String stratName = atoms.reset(text).nextAtom();
+                    set.add(new MatchingStrategy(stratName, atoms.nextAtom()));
+                }
+                return false;
+            }
+
+            expectTermination(line, "strategy");
+            return complete(set);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.metrics.ClientMetrics;
+import ca.ubc.cs317.dict.util.AtomScanner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decoder for the replies sent by a DICT server, working directly on the bytes read from the socket. Lines are located
+ * in a reusable buffer and scanned in place: status codes are parsed from their digits, atoms are located with an
+ * AtomScanner over the buffer, and the lines of a text block are dot-unstuffed into a single byte array that
+ * is decoded as UTF-8 once per block. No String is created for a line unless its contents are actually returned.
+ * <p>
+ * Lines may be terminated by CRLF or by a bare LF. Lines longer than the buffer make it grow as needed.
+ */
+final class ReplyDecoder implements Closeable {
+
+    private static final int INITIAL_CAPACITY = 8192;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final InputStream in;
+    private final ClientMetrics metrics;
+
+    // Position is the start of the unread data, limit is the end of the data read from the stream
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private byte[] block = new byte[INITIAL_CAPACITY];
+
+    // Bounds of the current line in the buffer, excluding its terminator
+    private int lineStart;
+    private int lineEnd;
+    // Number of bytes of the stream consumed as lines so far
+    private long consumed;
+    private final AtomScanner atoms = new AtomScanner();
+
+    ReplyDecoder(InputStream in, ClientMetrics metrics) {
+        this.in = in;
+        this.metrics = metrics;
+        buffer.flip();
+    }
+
+    /** Reads a status line and returns its status code. The remaining atoms of the line can then be retrieved with
+     * readAtom.
+     *
+     * @return The status code, between 100 and 599.
+     * @throws DictConnectionException If the connection was closed or the line is not a valid status line.
+     * @throws IOException If the connection was interrupted.
+     */
+    int readStatus() throws DictConnectionException, IOException {
+        if (!readLine())
+            throw new DictConnectionException("Connection closed by server");
+
+        byte[] array = buffer.array();
+        int space = lineStart;
+        while (space < lineEnd && array[space] != ' ')
+            space++;
+        if (space == lineEnd)
+            throw new DictConnectionException("Invalid status line");
+
+        int statusCode = 0;
+        for (int i = lineStart; i < space; i++) {
+            int digit = array[i] - '0';
+            if (digit < 0 || digit > 9 || i - lineStart > 3)
+                throw new DictConnectionException("Status code number expected (" + currentLine() + ")");
+            statusCode = statusCode * 10 + digit;
+        }
+        if (space == lineStart)
+            throw new DictConnectionException("Status code number expected (" + currentLine() + ")");
+        if (statusCode < 100 || statusCode > 599)
+            throw new DictConnectionException("Invalid status code received: " + statusCode);
+        metrics.recordStatus(statusCode);
+
+        atoms.reset(array, space + 1, lineEnd);
+        return statusCode;
+    }
+
+    /** Reads the next line of a text block. The atoms of the line can then be retrieved with readAtom.
+     *
+     * @return true if a line was read, false if the line was the "." that terminates the block.
+     * @throws DictConnectionException If the connection was closed before the end of the block.
+     * @throws IOException If the connection was interrupted.
+     */
+    boolean readTextLine() throws DictConnectionException, IOException {
+        if (!readLine())
+            throw new DictConnectionException("Connection closed by server");
+        return unstuff();
+    }
+
+    /** Reads all remaining lines of a text block, up to and including the terminating ".", and joins them with the
+     * platform line separator, the same way Definition.appendDefinition does.
+     *
+     * @return The text of the block, or null if the block has no lines.
+     * @throws DictConnectionException If the connection was closed before the end of the block.
+     * @throws IOException If the connection was interrupted.
+     */
+    String readTextBlock() throws DictConnectionException, IOException {
+        int length = 0;
+        boolean first = true;
+        while (readTextLine()) {
+            int lineLength = lineEnd - lineStart;
+            int needed = length + lineLength + (first ? 0 : LINE_SEPARATOR.length);
+            if (needed > block.length)
+                block = grow(block, needed);
+            if (!first) {
+                System.arraycopy(LINE_SEPARATOR, 0, block, length, LINE_SEPARATOR.length);
+                length += LINE_SEPARATOR.length;
+            }
+            System.arraycopy(buffer.array(), lineStart, block, length, lineLength);
+            length += lineLength;
+            first = false;
+        }
+        return first ? null : new String(block, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the next atom of the current line: either the contents of a pair of double quotes, or a sequence of
+     * non-blank characters.
+     *
+     * @return The atom, or null if there are no atoms left on the line.
+     */
+    String readAtom() {
+        return atoms.nextAtom();
+    }
+
+    /** Moves past the next atom of the current line without creating a String for it.
+     *
+     * @return true if an atom was skipped, false if there are no atoms left on the line.
+     */
+    boolean skipAtom() {
+        return atoms.next();
+    }
+
+    /** Returns the number of bytes of the stream consumed as lines so far, including line terminators.
+     */
+    long getBytesConsumed() {
+        return consumed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /** Removes the leading dot of a dot-stuffed line.
+     *
+     * @return false if the current line is the "." that terminates a text block, true otherwise.
+     */
+    private boolean unstuff() {
+        if (lineEnd > lineStart && buffer.get(lineStart) == '.') {
+            if (lineEnd - lineStart == 1)
+                return false;
+            if (buffer.get(lineStart + 1) == '.')
+                lineStart++;
+        }
+        atoms.reset(buffer.array(), lineStart, lineEnd);
+        return true;
+    }
+
+    /** Locates the next complete line in the buffer, reading from the stream as needed.
+     *
+     * @return true if a line was found, false if the stream ended before any more data was read.
+     */
+    private boolean readLine() throws IOException {
+        int scanned = 0;
+        while (true) {
+            byte[] array = buffer.array();
+            int start = buffer.position();
+            for (int i = start + scanned; i < buffer.limit(); i++) {
+                if (array[i] == '\n') {
+                    metrics.recordReplyLine();
+                    setLine(start, i > start && array[i - 1] == '\r' ? i - 1 : i);
+                    consumed += i + 1 - start;
+                    buffer.position(i + 1);
+                    return true;
+                }
+            }
+            scanned = buffer.remaining();
+            if (!fill()) {
+                if (!buffer.hasRemaining())
+                    return false;
+                // The stream ended in the middle of a line; return what there is
+                setLine(buffer.position(), buffer.limit());
+                consumed += buffer.remaining();
+                buffer.position(buffer.limit());
+                return true;
+            }
+        }
+    }
+
+    private void setLine(int start, int end) {
+        lineStart = start;
+        lineEnd = end;
+    }
+
+    /** Reads more data from the stream, moving unread data to the start of the buffer and growing it if it is full.
+     *
+     * @return false if the stream has ended.
+     */
+    private boolean fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        int read = in.read(buffer.array(), buffer.position(), buffer.remaining());
+        if (read > 0) {
+            buffer.position(buffer.position() + read);
+            metrics.recordBytesRead(read);
+        }
+        buffer.flip();
+        return read >= 0;
+    }
+
+    private String currentLine() {
+        return new String(buffer.array(), lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] grow(byte[] array, int needed) {
+        byte[] larger = new byte[Math.max(needed, array.length * 2)];
+        System.arraycopy(array, 0, larger, 0, array.length);
+        return larger;
+    }
+}
@@ -0,0 +1,226 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the phases of a request sent by DictionaryConnection: waiting for the connection's
+ * monitor, writing the command, waiting for the first status line of the reply, parsing each definition, and the
+ * request as a whole. All events are in the "DICT" category and carry the command, word, database and strategy of the
+ * request, so a recording shows where the time of a slow lookup went.
+ * <p>
+ * A trace is created before the connection is locked and used by a single thread. When no recording is running, the
+ * events are never committed and the cost is a few allocations per request.
+ */
+final class RequestTrace {
+
+    private final RequestEvent request = new RequestEvent();
+    private final LockEvent lock = new LockEvent();
+    private final SendEvent send = new SendEvent();
+    private final ReplyWaitEvent replyWait = new ReplyWaitEvent();
+    private DefinitionEvent definition;
+
+    private ReplyDecoder input;
+    private CountingOutputStream output;
+    private long readStart;
+    private long writeStart;
+    private long sendStart;
+    private long replyStart;
+    private long definitionStart;
+    private boolean replyStarted;
+
+    /** Starts tracing a request, before the lock on the connection is acquired.
+     *
+     * @param command Name of the command, e.g., DEFINE.
+     * @param word The word looked up, or the first word of a batch.
+     * @param database The database used, if any.
+     * @param strategy The matching strategy used, if any.
+     */
+    RequestTrace(String command, String word, Database database, MatchingStrategy strategy) {
+        for (DictEvent event : new DictEvent[] {request, lock, send, replyWait}) {
+            event.command = command;
+            event.word = word;
+            event.database = database == null ? null : database.getName();
+            event.strategy = strategy == null ? null : strategy.getName();
+        }
+        request.begin();
+        lock.begin();
+    }
+
+    /** Marks the end of the wait for the connection's monitor.
+     *
+     * @param input The decoder of the connection, used to count the bytes read by the request.
+     * @param output The output stream of the connection, used to count the bytes written by the request.
+     */
+    void lockAcquired(ReplyDecoder input, CountingOutputStream output) {
+        lock.commit();
+        this.input = input;
+        this.output = output;
+        readStart = input.getBytesConsumed();
+        writeStart = output.getCount();
+    }
+
+    void sending() {
+        send.begin();
+        sendStart = output.getCount();
+    }
+
+    /** Marks the end of a write, after the command (or window of pipelined commands) has been flushed.
+     */
+    void sent() {
+        send.end();
+        if (send.shouldCommit()) {
+            send.bytesWritten = output.getCount() - sendStart;
+            send.commit();
+        }
+        if (!replyStarted) {
+            replyWait.begin();
+            replyStart = input.getBytesConsumed();
+        }
+    }
+
+    /** Marks the arrival of a status line. Only the first one, which ends the wait for the reply, is traced.
+     *
+     * @param statusCode The status code received.
+     */
+    void statusReceived(int statusCode) {
+        if (replyStarted)
+            return;
+        replyStarted = true;
+        replyWait.end();
+        if (replyWait.shouldCommit()) {
+            replyWait.statusCode = statusCode;
+            replyWait.bytesRead = input.getBytesConsumed() - replyStart;
+            replyWait.commit();
+        }
+    }
+
+    /** Marks the start of a definition, right after its 151 status line has been read.
+     */
+    void definitionStarted() {
+        definition = new DefinitionEvent();
+        definition.command = request.command;
+        definition.word = request.word;
+        definition.database = request.database;
+        definition.begin();
+        definitionStart = input.getBytesConsumed();
+    }
+
+    void definitionParsed(Definition parsed) {
+        definition.end();
+        if (definition.shouldCommit()) {
+            definition.headword = parsed.getWord();
+            definition.definitionDatabase = parsed.getDatabase() == null ? null : parsed.getDatabase().getName();
+            definition.bytesRead = input.getBytesConsumed() - definitionStart;
+            definition.commit();
+        }
+        request.results++;
+    }
+
+    void matchParsed() {
+        request.results++;
+    }
+
+    /** Marks the end of the request, whether it completed or failed.
+     *
+     * @param success Whether the whole reply was read without an exception.
+     */
+    void end(boolean success) {
+        request.end();
+        if (request.shouldCommit()) {
+            request.success = success;
+            if (input != null) {
+                request.bytesRead = input.getBytesConsumed() - readStart;
+                request.bytesWritten = output.getCount() - writeStart;
+            }
+            request.commit();
+        }
+    }
+
+    @Category("DICT")
+    @StackTrace(false)
+    abstract static class DictEvent extends Event {
+        @Label("Command")
+        String command;
+
+        @Label("Word")
+        @Description("The word looked up, or the first word of a batch")
+        String word;
+
+        @Label("Database")
+        String database;
+
+        @Label("Strategy")
+        String strategy;
+    }
+
+    @Name("ca.ubc.cs317.dict.Request")
+    @Label("DICT Request")
+    @Description("A request, from the call until the whole reply has been read")
+    static class RequestEvent extends DictEvent {
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Results")
+        @Description("Number of definitions or matches received")
+        int results;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("ca.ubc.cs317.dict.LockWait")
+    @Label("DICT Lock Wait")
+    @Description("Time spent waiting for another request on the same connection to finish")
+    static class LockEvent extends DictEvent {
+    }
+
+    @Name("ca.ubc.cs317.dict.Send")
+    @Label("DICT Command Sent")
+    @Description("Writing and flushing a command, or a window of pipelined commands")
+    static class SendEvent extends DictEvent {
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+    }
+
+    @Name("ca.ubc.cs317.dict.ReplyWait")
+    @Label("DICT Reply Wait")
+    @Description("Time from the end of the first write until the first status line of the reply was read")
+    static class ReplyWaitEvent extends DictEvent {
+        @Label("Status Code")
+        int statusCode;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+    }
+
+    @Name("ca.ubc.cs317.dict.Definition")
+    @Label("DICT Definition Parsed")
+    @Description("Reading and decoding the text of a single definition")
+    static class DefinitionEvent extends DictEvent {
+        @Label("Headword")
+        String headword;
+
+        @Label("Definition Database")
+        String definitionDatabase;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+    }
+}
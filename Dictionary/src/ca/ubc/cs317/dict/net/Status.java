@@ -20,6 +20,8 @@ public class Status {
     private String details;
 
     private Status(String line) throws DictConnectionException {
+        if (line == null)
+            throw new DictConnectionException("Connection closed by server");
         String[] components = line.split(" ", 2);
         if (components.length < 2)
             throw new DictConnectionException("Invalid status line");
@@ -33,6 +35,16 @@ public class Status {
         this.details = components[1];
     }
 
+    /** Parses a status line that has already been read from the server.
+     *
+     * @param line The complete status line, without its line terminator.
+     * @return The parsed status.
+     * @throws DictConnectionException If the line is not a valid status line.
+     */
+    static Status parse(String line) throws DictConnectionException {
+        return new Status(line);
+    }
+
     public static Status readStatus(BufferedReader input) throws DictConnectionException {
         try {
             return new Status(input.readLine());
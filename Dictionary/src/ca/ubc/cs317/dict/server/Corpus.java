@@ -0,0 +1,129 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.util.*;
+
+/**
+ * In-memory set of databases served by an EmbeddedDictServer. Each database maps headwords to one or more definition
+ * texts; headwords are matched case-insensitively. Databases are listed in the order they were added, which is also
+ * the order in which '*' and '!' look them up. A corpus may be changed while a server is using it.
+ */
+public class Corpus implements DictionarySource {
+
+    private final Map<String, Entries> databases = new LinkedHashMap<>();
+
+    /** Adds an empty database, or changes the description of an existing one.
+     *
+     * @param name Name of the database, as used in DEFINE and MATCH commands.
+     * @param description Description shown in SHOW DB.
+     * @return This corpus.
+     */
+    public synchronized Corpus addDatabase(String name, String description) {
+        Entries entries = databases.get(name);
+        if (entries == null)
+            databases.put(name, new Entries(new Database(name, description)));
+        else
+            entries.database = new Database(name, description);
+        return this;
+    }
+
+    /** Adds a definition of a headword to a database, creating the database if it doesn't exist.
+     *
+     * @param databaseName Name of the database.
+     * @param word The headword being defined.
+     * @param text The text of the definition, with lines separated by '\n'.
+     * @return This corpus.
+     */
+    public synchronized Corpus addDefinition(String databaseName, String word, String text) {
+        if (!databases.containsKey(databaseName))
+            addDatabase(databaseName, databaseName);
+        Entries entries = databases.get(databaseName);
+        String key = word.toLowerCase(Locale.ROOT);
+        List<Definition> definitions = entries.words.get(key);
+        if (definitions == null) {
+            definitions = new ArrayList<>();
+            entries.words.put(key, definitions);
+        }
+        Definition definition = new Definition(word, entries.database);
+        definition.setDefinition(text);
+        definitions.add(definition);
+        return this;
+    }
+
+    @Override
+    public synchronized List<Database> getDatabases() {
+        List<Database> list = new ArrayList<>();
+        for (Entries entries : databases.values())
+            list.add(entries.database);
+        return list;
+    }
+
+    @Override
+    public synchronized boolean hasDatabase(String name) {
+        return databases.containsKey(name);
+    }
+
+    /** Returns all definitions of a word in a database.
+     *
+     * @param databaseName Name of a regular database.
+     * @param word The word to be looked up.
+     * @return The definitions, in the order they were added, or an empty list if there are none.
+     */
+    @Override
+    public synchronized List<Definition> define(String databaseName, String word) {
+        Entries entries = databases.get(databaseName);
+        if (entries == null)
+            return Collections.emptyList();
+        List<Definition> definitions = entries.words.get(word.toLowerCase(Locale.ROOT));
+        return definitions == null ? Collections.<Definition>emptyList() : new ArrayList<>(definitions);
+    }
+
+    /** Returns the headwords of a database that match a word.
+     *
+     * @param databaseName Name of a regular database.
+     * @param strategy One of "exact", "prefix" or "substring".
+     * @param word The word pattern to be matched.
+     * @return The matching headwords, in case-insensitive alphabetical order.
+     */
+    @Override
+    public synchronized List<String> match(String databaseName, String strategy, String word) {
+        List<String> matches = new ArrayList<>();
+        Entries entries = databases.get(databaseName);
+        if (entries == null)
+            return matches;
+
+        String key = word.toLowerCase(Locale.ROOT);
+        Map<String, List<Definition>> candidates;
+        switch (strategy) {
+            case "exact":
+                candidates = entries.words.subMap(key, true, key, true);
+                break;
+            case "prefix":
+                // Every key starting with the prefix sorts between the prefix itself and the prefix followed by the
+                // largest char
+                candidates = entries.words.subMap(key, true, key + Character.MAX_VALUE, true);
+                break;
+            default:
+                candidates = new TreeMap<>();
+                for (Map.Entry<String, List<Definition>> entry : entries.words.entrySet())
+                    if (entry.getKey().contains(key))
+                        candidates.put(entry.getKey(), entry.getValue());
+        }
+        for (List<Definition> definitions : candidates.values()) {
+            // Headwords that differ only in case are listed once, as first added
+            matches.add(definitions.get(0).getWord());
+        }
+        return matches;
+    }
+
+    private static class Entries {
+        private Database database;
+        private final TreeMap<String, List<Definition>> words = new TreeMap<>();
+
+        private Entries(Database database) {
+            this.database = database;
+        }
+    }
+}
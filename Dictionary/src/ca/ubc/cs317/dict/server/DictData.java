@@ -0,0 +1,20 @@
+package ca.ubc.cs317.dict.server;
+
+import java.io.IOException;
+
+/**
+ * Random access to the text of a dictd database: a plain .dict file or a compressed .dict.dz file.
+ */
+interface DictData {
+
+    long size();
+
+    /** Reads part of the text.
+     *
+     * @param offset Position of the first byte, in the uncompressed text.
+     * @param length Number of bytes to be read.
+     * @return The bytes read.
+     * @throws IOException If the range is beyond the end of the text, or the data can't be read.
+     */
+    byte[] read(long offset, int length) throws IOException;
+}
@@ -0,0 +1,93 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.util.VirtualThreads;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs an EmbeddedDictServer as a standalone DICT server for the dictd databases (.index files with .dict or .dict.dz
+ * files) found in a directory. By default the server only listens on the loopback address; use "--bind 0.0.0.0" to accept connections
+ * from other hosts. Each connection runs on its own platform thread, up to "--max-sessions" connections at a time
+ * (further ones are answered with 420), or on its own virtual thread with "--virtual-threads" when running on a JDK
+ * that provides them. Connections that send no command for "--idle-timeout" seconds are closed.
+ */
+public class DictServerMain {
+
+    private Path directory = Paths.get(".");
+    private InetAddress address = InetAddress.getLoopbackAddress();
+    private int port = 2628;
+    private boolean virtualThreads = false;
+    private int maxSessions = 256;
+    private int idleTimeoutSeconds = 300;
+
+    public static void main(String[] args) throws Exception {
+        DictServerMain main = new DictServerMain();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--dir": main.directory = Paths.get(args[++i]); break;
+                    case "--bind": main.address = InetAddress.getByName(args[++i]); break;
+                    case "--port": main.port = Integer.parseInt(args[++i]); break;
+                    case "--virtual-threads": main.virtualThreads = true; break;
+                    case "--max-sessions": main.maxSessions = Integer.parseInt(args[++i]); break;
+                    case "--idle-timeout": main.idleTimeoutSeconds = Integer.parseInt(args[++i]); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (RuntimeException | IOException e) {
+            System.err.println(e.getMessage() == null ? e.toString() : e.getMessage());
+            System.err.println("Usage: DictServerMain [--dir directory with .index and .dict/.dict.dz files] [--bind address]"
+                    + " [--port port] [--virtual-threads] [--max-sessions count] [--idle-timeout seconds]");
+            System.exit(2);
+        }
+        main.run();
+    }
+
+    private void run() throws Exception {
+        long started = System.nanoTime();
+        DictdCorpus corpus = DictdCorpus.open(directory);
+        if (corpus.getDatabases().isEmpty()) {
+            System.err.println("No databases found in " + directory.toAbsolutePath());
+            System.exit(1);
+        }
+        for (Database database : corpus.getDatabases())
+            System.out.println("Loaded " + database.getName() + " (" + database.getDescription() + ")");
+
+        EmbeddedDictServer server = new EmbeddedDictServer(corpus, address, port, sessions());
+        server.setIdleTimeout((int) TimeUnit.SECONDS.toMillis(idleTimeoutSeconds));
+        server.start();
+        System.out.printf("Serving %d databases on %s:%d, started in %d ms%n", corpus.getDatabases().size(),
+                server.getHost(), server.getPort(), (System.nanoTime() - started) / 1_000_000);
+
+        // The accept loop and sessions run on daemon threads; keep the JVM alive until it is killed
+        Thread.currentThread().join();
+    }
+
+    private ExecutorService sessions() {
+        if (virtualThreads) {
+            ExecutorService executor = VirtualThreads.newPerTaskExecutor();
+            if (executor != null)
+                return executor;
+            System.err.println("Virtual threads are not available on this JDK; using platform threads");
+        }
+        // One more thread than sessions for the accept loop; sessions beyond the limit are rejected, not queued
+        return new ThreadPoolExecutor(0, maxSessions + 1, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "dict-server-session");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+}
@@ -0,0 +1,83 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Set of dictd databases served by an EmbeddedDictServer. Databases are listed in the order they were added, which is
+ * also the order in which '*' and '!' look them up. Lookups don't lock anything, so any number of sessions can use the
+ * same corpus at once.
+ */
+public class DictdCorpus implements DictionarySource {
+
+    private final Map<String, DictdDatabase> databases = new LinkedHashMap<>();
+
+    /** Opens every database in a directory, i.e., every .index file that has a .dict or .dict.dz file next to it, in
+     * alphabetical order of file name.
+     *
+     * @param directory The directory containing the database files.
+     * @return A corpus with the databases found.
+     * @throws IOException If the directory or one of the databases can't be read.
+     */
+    public static DictdCorpus open(Path directory) throws IOException {
+        List<Path> indexFiles = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.index")) {
+            for (Path file : files) {
+                String name = DictdDatabase.baseName(file);
+                if (Files.exists(file.resolveSibling(name + ".dict")) || Files.exists(file.resolveSibling(name + ".dict.dz")))
+                    indexFiles.add(file);
+            }
+        }
+        Collections.sort(indexFiles);
+
+        DictdCorpus corpus = new DictdCorpus();
+        for (Path file : indexFiles)
+            corpus.addDatabase(DictdDatabase.open(file));
+        return corpus;
+    }
+
+    /** Adds a database, replacing any database with the same name.
+     *
+     * @param database The database to be added.
+     * @return This corpus.
+     */
+    public synchronized DictdCorpus addDatabase(DictdDatabase database) {
+        databases.put(database.getDatabase().getName(), database);
+        return this;
+    }
+
+    @Override
+    public synchronized List<Database> getDatabases() {
+        List<Database> list = new ArrayList<>();
+        for (DictdDatabase database : databases.values())
+            list.add(database.getDatabase());
+        return list;
+    }
+
+    @Override
+    public synchronized boolean hasDatabase(String name) {
+        return databases.containsKey(name);
+    }
+
+    @Override
+    public List<Definition> define(String databaseName, String word) {
+        DictdDatabase database = getDatabase(databaseName);
+        return database == null ? Collections.<Definition>emptyList() : database.define(word);
+    }
+
+    @Override
+    public List<String> match(String databaseName, String strategy, String word) {
+        DictdDatabase database = getDatabase(databaseName);
+        return database == null ? Collections.<String>emptyList() : database.match(strategy, word);
+    }
+
+    private synchronized DictdDatabase getDatabase(String name) {
+        return databases.get(name);
+    }
+}
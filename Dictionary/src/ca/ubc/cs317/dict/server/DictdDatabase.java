@@ -0,0 +1,339 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A database in the format used by dictd: a .index file with one "headword TAB offset TAB length" line per entry, where
+ * offset and length are numbers in dictd's base64 notation, and a .dict file holding the text of the entries at those
+ * positions, or a .dict.dz file holding the same text compressed with dictzip. All files are memory-mapped, so opening
+ * a database only reads the index once to locate its lines, and lookups binary-search the index in place without
+ * keeping the headwords on the heap.
+ * <p>
+ * Headwords are compared the way dictd sorts its indexes (sort -df): ignoring case and any character other than
+ * letters, digits and blanks. If the index isn't sorted that way, its lines are sorted when the database is opened.
+ * The "00-database-" entries hold information about the database itself and are not returned by lookups; the
+ * description of the database is taken from 00-database-short. Instances are immutable and safe to share between
+ * threads.
+ */
+public class DictdDatabase {
+
+    private static final String INFO_PREFIX = "00-database-";
+    private static final String INFO_PREFIX_SHORT = "00database";
+    private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    private final Database database;
+    private final ByteBuffer index;
+    private final DictData dict;
+    // Offsets in the index of the lines of all regular entries, sorted by key
+    private final int[] entries;
+
+    /** Opens a database from its index and data files.
+     *
+     * @param name Name of the database, as used in DEFINE and MATCH commands.
+     * @param indexFile The .index file.
+     * @param dictFile The .dict file, or the .dict.dz file if its name ends with ".dz".
+     * @throws IOException If a file can't be read, is larger than 2 GB, or the index is malformed.
+     */
+    public DictdDatabase(String name, Path indexFile, Path dictFile) throws IOException {
+        this.index = map(indexFile);
+        this.dict = dictFile.getFileName().toString().endsWith(".dz") ? new DictzipReader(dictFile) : new MappedData(map(dictFile));
+
+        List<Integer> offsets = new ArrayList<>();
+        int info = -1;
+        for (int offset = 0; offset < index.limit(); offset = nextLine(offset)) {
+            String headword = headword(offset);
+            if (headword.isEmpty())
+                continue;
+            skipField(skipField(offset)); // Check that the line has all its fields
+            if (headword.startsWith(INFO_PREFIX) || headword.startsWith(INFO_PREFIX_SHORT)) {
+                if (headword.endsWith("short"))
+                    info = offset;
+                continue;
+            }
+            offsets.add(offset);
+        }
+        this.entries = sorted(offsets);
+        this.database = new Database(name, info < 0 ? name : description(info, name));
+    }
+
+    /** Opens a database from its .index file and the .dict file next to it, or the .dict.dz file if there is no .dict
+     * file. The name of the database is the name of the index file without its extension.
+     *
+     * @param indexFile The .index file.
+     * @throws IOException If a file can't be read, is larger than 2 GB, or the index is malformed.
+     */
+    public static DictdDatabase open(Path indexFile) throws IOException {
+        String name = baseName(indexFile);
+        Path dictFile = indexFile.resolveSibling(name + ".dict");
+        if (!Files.exists(dictFile) && Files.exists(indexFile.resolveSibling(name + ".dict.dz")))
+            dictFile = indexFile.resolveSibling(name + ".dict.dz");
+        return new DictdDatabase(name, indexFile, dictFile);
+    }
+
+    public Database getDatabase() {
+        return database;
+    }
+
+    /** Returns the number of regular entries in the index.
+     */
+    public int size() {
+        return entries.length;
+    }
+
+    /** Returns all definitions of a word, in index order.
+     *
+     * @param word The word to be looked up.
+     * @return The definitions, or an empty list if there are none.
+     */
+    public List<Definition> define(String word) {
+        List<Definition> definitions = new ArrayList<>();
+        String key = key(word);
+        for (int i = lowerBound(key); i < entries.length && key(headword(entries[i])).equals(key); i++) {
+            Definition definition = new Definition(headword(entries[i]), database);
+            definition.setDefinition(text(entries[i]));
+            definitions.add(definition);
+        }
+        return definitions;
+    }
+
+    /** Returns the headwords that match a word.
+     *
+     * @param strategy One of "exact", "prefix" or "substring".
+     * @param word The word pattern to be matched.
+     * @return The matching headwords in index order, with headwords that differ only in case listed once.
+     */
+    public List<String> match(String strategy, String word) {
+        Map<String, String> matches = new LinkedHashMap<>();
+        String key = key(word);
+        switch (strategy) {
+            case "exact":
+                for (int i = lowerBound(key); i < entries.length; i++) {
+                    String headword = headword(entries[i]);
+                    if (!key(headword).equals(key))
+                        break;
+                    addMatch(matches, headword);
+                }
+                break;
+            case "prefix":
+                for (int i = lowerBound(key); i < entries.length; i++) {
+                    String headword = headword(entries[i]);
+                    if (!key(headword).startsWith(key))
+                        break;
+                    addMatch(matches, headword);
+                }
+                break;
+            default:
+                for (int entry : entries) {
+                    String headword = headword(entry);
+                    if (key(headword).contains(key))
+                        addMatch(matches, headword);
+                }
+        }
+        return new ArrayList<>(matches.values());
+    }
+
+    /** Converts a headword into the form used to compare it: lower case, with only letters, digits and blanks.
+     */
+    static String key(String headword) {
+        StringBuilder key = new StringBuilder(headword.length());
+        for (int i = 0; i < headword.length(); i++) {
+            char c = headword.charAt(i);
+            if (Character.isLetterOrDigit(c) || Character.isWhitespace(c))
+                key.append(Character.toLowerCase(c));
+        }
+        return key.toString();
+    }
+
+    /** Decodes a number in dictd's base64 notation, in which each character is a digit in base 64, most significant
+     * first.
+     */
+    static long decodeNumber(CharSequence digits) throws IOException {
+        long value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            int digit = BASE64.indexOf(digits.charAt(i));
+            if (digit < 0)
+                throw new IOException("Invalid number in index: " + digits);
+            value = value * 64 + digit;
+        }
+        return value;
+    }
+
+    private static void addMatch(Map<String, String> matches, String headword) {
+        String folded = headword.toLowerCase(Locale.ROOT);
+        if (!matches.containsKey(folded))
+            matches.put(folded, headword);
+    }
+
+    /** Returns the position of the first entry whose key is not less than the given key.
+     */
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (key(headword(entries[middle])).compareTo(key) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /** Orders index lines by key. The index is normally sorted already, in which case this only checks it.
+     */
+    private int[] sorted(List<Integer> offsets) {
+        int[] sorted = new int[offsets.size()];
+        boolean inOrder = true;
+        String previous = "";
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = offsets.get(i);
+            String key = key(headword(sorted[i]));
+            if (key.compareTo(previous) < 0)
+                inOrder = false;
+            previous = key;
+        }
+        if (inOrder)
+            return sorted;
+
+        final String[] keys = new String[sorted.length];
+        Integer[] order = new Integer[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            keys[i] = key(headword(sorted[i]));
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return keys[a].compareTo(keys[b]);
+            }
+        });
+        int[] reordered = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++)
+            reordered[i] = sorted[order[i]];
+        return reordered;
+    }
+
+    private String description(int infoEntry, String name) throws IOException {
+        // The entry is the headword on a line of its own, followed by the description
+        String text = readText(infoEntry).trim();
+        int newline = text.indexOf('\n');
+        String description = newline < 0 ? text : text.substring(newline + 1).trim();
+        return description.isEmpty() ? name : description;
+    }
+
+    private String text(int entry) {
+        try {
+            return readText(entry);
+        } catch (IOException e) {
+            throw new IllegalStateException("Malformed index line: " + headword(entry), e);
+        }
+    }
+
+    /** Reads the text of the entry whose index line starts at an offset, without its trailing line break.
+     */
+    private String readText(int entry) throws IOException {
+        int start = skipField(entry);
+        int end = skipField(start);
+        long offset = decodeNumber(field(start));
+        long length = decodeNumber(field(end));
+        if (offset + length > dict.size())
+            throw new IOException("Entry beyond the end of the data file: " + headword(entry));
+
+        byte[] bytes = dict.read(offset, (int) length);
+        int size = bytes.length;
+        while (size > 0 && (bytes[size - 1] == '\n' || bytes[size - 1] == '\r'))
+            size--;
+        return new String(bytes, 0, size, StandardCharsets.UTF_8);
+    }
+
+    private String headword(int offset) {
+        int end = offset;
+        while (end < index.limit() && index.get(end) != '\t' && index.get(end) != '\n')
+            end++;
+        byte[] bytes = new byte[end - offset];
+        ByteBuffer view = index.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the contents of the field starting at an offset of the index, up to the next tab or line break.
+     */
+    private CharSequence field(int offset) {
+        StringBuilder field = new StringBuilder();
+        for (int i = offset; i < index.limit(); i++) {
+            byte b = index.get(i);
+            if (b == '\t' || b == '\n' || b == '\r')
+                break;
+            field.append((char) b);
+        }
+        return field;
+    }
+
+    /** Returns the offset of the field after the one starting at an offset of the index.
+     */
+    private int skipField(int offset) throws IOException {
+        for (int i = offset; i < index.limit(); i++) {
+            byte b = index.get(i);
+            if (b == '\t')
+                return i + 1;
+            if (b == '\n')
+                break;
+        }
+        throw new IOException("Missing field in index line");
+    }
+
+    private int nextLine(int offset) {
+        while (offset < index.limit() && index.get(offset) != '\n')
+            offset++;
+        return offset + 1;
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("File too large to be mapped: " + file);
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /** Text of an uncompressed .dict file, read directly from its mapping.
+     */
+    private static class MappedData implements DictData {
+        private final ByteBuffer buffer;
+
+        private MappedData(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public long size() {
+            return buffer.limit();
+        }
+
+        @Override
+        public byte[] read(long offset, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position((int) offset);
+            view.get(bytes);
+            return bytes;
+        }
+    }
+
+    static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.indexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+}
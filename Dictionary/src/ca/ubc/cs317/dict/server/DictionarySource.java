@@ -0,0 +1,36 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+
+import java.util.List;
+
+/**
+ * Databases served by an EmbeddedDictServer, whether they are kept in memory (Corpus) or read from dictd files
+ * (DictdCorpus). Implementations must allow concurrent lookups from any number of sessions.
+ */
+public interface DictionarySource {
+
+    /** Returns the databases, in the order in which '*' and '!' look them up.
+     */
+    List<Database> getDatabases();
+
+    boolean hasDatabase(String name);
+
+    /** Returns all definitions of a word in a database.
+     *
+     * @param databaseName Name of a regular database.
+     * @param word The word to be looked up.
+     * @return The definitions, or an empty list if there are none.
+     */
+    List<Definition> define(String databaseName, String word);
+
+    /** Returns the headwords of a database that match a word.
+     *
+     * @param databaseName Name of a regular database.
+     * @param strategy One of "exact", "prefix" or "substring".
+     * @param word The word pattern to be matched.
+     * @return The matching headwords, each listed once.
+     */
+    List<String> match(String databaseName, String strategy, String word);
+}
@@ -0,0 +1,235 @@
+package ca.ubc.cs317.dict.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random-access reader for dictzip (.dict.dz) files. A dictzip file is a gzip file whose data was compressed in chunks
+ * of a fixed uncompressed size, each flushed so that it can be inflated on its own; the compressed size of every chunk
+ * is listed in an "RA" subfield of the gzip extra field. Reading a range of the text only inflates the chunks that
+ * cover it.
+ * <p>
+ * The compressed file is memory-mapped. Recently inflated chunks are kept in an LRU cache, so the neighbouring
+ * entries of a popular word cost no more than in an uncompressed file, and Inflater instances are reused across reads
+ * instead of allocating native zlib state for every chunk. Instances are safe to share between threads.
+ */
+public class DictzipReader implements DictData, Closeable {
+
+    public static final int DEFAULT_CACHE_CHUNKS = 64;
+
+    private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+    // Inflaters kept for reuse; more than this are only needed when many threads read at once
+    private static final int MAX_IDLE_INFLATERS = 8;
+
+    private final ByteBuffer file;
+    private final int chunkLength;
+    // Offset in the file of the compressed data of each chunk, with one extra entry for the end of the last chunk
+    private final long[] chunkOffsets;
+    private final long size;
+
+    private final Map<Integer, byte[]> cache;
+    private final Deque<Inflater> inflaters = new ArrayDeque<>();
+
+    /** Opens a dictzip file, caching up to DEFAULT_CACHE_CHUNKS inflated chunks.
+     *
+     * @param path The .dict.dz file.
+     * @throws IOException If the file can't be read, is larger than 2 GB, or isn't a dictzip file.
+     */
+    public DictzipReader(Path path) throws IOException {
+        this(path, DEFAULT_CACHE_CHUNKS);
+    }
+
+    /** Opens a dictzip file.
+     *
+     * @param path The .dict.dz file.
+     * @param cacheChunks Maximum number of inflated chunks kept in memory.
+     * @throws IOException If the file can't be read, is larger than 2 GB, or isn't a dictzip file.
+     */
+    public DictzipReader(Path path, final int cacheChunks) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("File too large to be mapped: " + path);
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        // Fixed gzip header: ID1 ID2 CM FLG MTIME(4) XFL OS
+        if (file.limit() < 10 || (file.get(0) & 0xff) != 0x1f || (file.get(1) & 0xff) != 0x8b || file.get(2) != 8)
+            throw new IOException("Not a gzip file: " + path);
+        int flags = file.get(3);
+        if ((flags & FEXTRA) == 0)
+            throw new IOException("Not a dictzip file (no extra field): " + path);
+
+        int extraLength = file.getShort(10) & 0xffff;
+        int extraStart = 12;
+        int position = extraStart + extraLength;
+
+        // Find the RA subfield: SI1 SI2 LEN(2) VER(2) CHLEN(2) CHCNT(2) then CHCNT compressed chunk sizes
+        int chunkCount = -1;
+        int chunkLength = 0;
+        int sizes = 0;
+        for (int sub = extraStart; sub + 4 <= position; ) {
+            int subLength = file.getShort(sub + 2) & 0xffff;
+            if (file.get(sub) == 'R' && file.get(sub + 1) == 'A' && subLength >= 6) {
+                chunkLength = file.getShort(sub + 6) & 0xffff;
+                chunkCount = file.getShort(sub + 8) & 0xffff;
+                sizes = sub + 10;
+                if (subLength < 6 + 2 * chunkCount)
+                    throw new IOException("Truncated chunk table: " + path);
+                break;
+            }
+            sub += 4 + subLength;
+        }
+        if (chunkCount < 0 || chunkLength == 0)
+            throw new IOException("Not a dictzip file (no chunk table): " + path);
+        this.chunkLength = chunkLength;
+
+        // Skip the optional file name, comment and header CRC
+        if ((flags & FNAME) != 0)
+            position = skipString(position);
+        if ((flags & FCOMMENT) != 0)
+            position = skipString(position);
+        if ((flags & FHCRC) != 0)
+            position += 2;
+
+        chunkOffsets = new long[chunkCount + 1];
+        chunkOffsets[0] = position;
+        for (int i = 0; i < chunkCount; i++)
+            chunkOffsets[i + 1] = chunkOffsets[i] + (file.getShort(sizes + 2 * i) & 0xffff);
+        if (chunkOffsets[chunkCount] > file.limit())
+            throw new IOException("Chunk table beyond the end of the file: " + path);
+
+        // The gzip trailer ends with the uncompressed size modulo 2^32
+        long trailerSize = file.getInt(file.limit() - 4) & 0xffffffffL;
+        long maxSize = (long) chunkLength * chunkCount;
+        size = chunkCount == 0 ? 0 : maxSize - ((maxSize - trailerSize) & 0xffffffffL);
+
+        cache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > cacheChunks;
+            }
+        };
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public byte[] read(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > size)
+            throw new IOException("Range beyond the end of the data: " + offset + "+" + length);
+
+        byte[] bytes = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            long position = offset + copied;
+            int chunk = (int) (position / chunkLength);
+            int start = (int) (position % chunkLength);
+            byte[] data = chunk(chunk);
+            int count = Math.min(length - copied, data.length - start);
+            if (count <= 0)
+                throw new IOException("Chunk " + chunk + " is shorter than expected");
+            System.arraycopy(data, start, bytes, copied, count);
+            copied += count;
+        }
+        return bytes;
+    }
+
+    /** Releases the native memory of the pooled inflaters. Reads after close still work, but don't reuse inflaters.
+     */
+    @Override
+    public void close() {
+        synchronized (inflaters) {
+            for (Inflater inflater : inflaters)
+                inflater.end();
+            inflaters.clear();
+        }
+    }
+
+    /** Returns the inflated data of a chunk, from the cache if possible.
+     */
+    private byte[] chunk(int chunk) throws IOException {
+        synchronized (cache) {
+            byte[] data = cache.get(chunk);
+            if (data != null)
+                return data;
+        }
+
+        // Inflate outside the lock so that other chunks can be read meanwhile
+        byte[] data = inflate(chunk);
+        synchronized (cache) {
+            cache.put(chunk, data);
+        }
+        return data;
+    }
+
+    private byte[] inflate(int chunk) throws IOException {
+        int compressedLength = (int) (chunkOffsets[chunk + 1] - chunkOffsets[chunk]);
+        byte[] compressed = new byte[compressedLength];
+        ByteBuffer view = file.duplicate();
+        view.position((int) chunkOffsets[chunk]);
+        view.get(compressed);
+
+        Inflater inflater = borrowInflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] buffer = new byte[chunkLength];
+            int length = 0;
+            while (length < buffer.length && !inflater.finished()) {
+                int inflated = inflater.inflate(buffer, length, buffer.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break; // Chunks end with a full flush rather than the end of the stream
+                length += inflated;
+            }
+            if (length == buffer.length)
+                return buffer;
+            byte[] data = new byte[length];
+            System.arraycopy(buffer, 0, data, 0, length);
+            return data;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt chunk " + chunk, e);
+        } finally {
+            returnInflater(inflater);
+        }
+    }
+
+    private Inflater borrowInflater() {
+        synchronized (inflaters) {
+            Inflater inflater = inflaters.poll();
+            // Chunks are raw deflate data without a zlib header
+            return inflater != null ? inflater : new Inflater(true);
+        }
+    }
+
+    private void returnInflater(Inflater inflater) {
+        inflater.reset();
+        synchronized (inflaters) {
+            if (inflaters.size() < MAX_IDLE_INFLATERS) {
+                inflaters.push(inflater);
+                return;
+            }
+        }
+        inflater.end();
+    }
+
+    private int skipString(int position) throws IOException {
+        while (position < file.limit() && file.get(position) != 0)
+            position++;
+        if (position >= file.limit())
+            throw new IOException("Truncated gzip header");
+        return position + 1;
+    }
+}
@@ -0,0 +1,548 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.util.DictStringParser;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process DICT server implementing the subset of RFC 2229 used by this client (banner, SHOW DB, SHOW STRAT, DEFINE,
+ * MATCH, STATUS, CLIENT and QUIT) over a Corpus, so that connections, benchmarks and load tests can run without a
+ * network. The same server can answer real clients from dictd files through a DictdCorpus (see DictServerMain).
+ * <p>
+ * Each connection is served by its own task on an executor: by default a cached pool of daemon threads, or any other
+ * ExecutorService, such as a virtual-thread-per-task executor when running on a JDK that provides one. If the executor
+ * rejects a connection, for instance because a bounded pool is full, the connection is answered with 420 and closed.
+ * Commands longer than the 1024 characters allowed by RFC 2229 are answered with 500 and the connection is closed, and
+ * an idle timeout can be set to close connections that stop sending commands.
+ * <p>
+ * For performance work, the server can delay its replies per command, limit the rate at which it writes bytes, and
+ * answer commands with injected error codes. A 421 reply, whether sent instead of the banner or instead of a command
+ * reply, closes the connection, as a real server shutting down would.
+ */
+public class EmbeddedDictServer implements Closeable {
+
+    private static final String[][] STRATEGIES = {
+            { "exact", "Match headwords exactly" },
+            { "prefix", "Match prefixes" },
+            { "substring", "Match substring occurring anywhere in a headword" }
+    };
+
+    // Connections waiting to be accepted
+    private static final int BACKLOG = 128;
+    // Longest command line allowed by RFC 2229, including the CRLF
+    private static final int MAX_COMMAND_LENGTH = 1024;
+
+    private final DictionarySource corpus;
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions;
+    private final Set<Socket> sockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    private final ConcurrentMap<String, Long> latencyMillis = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Deque<Integer>> injectedErrors = new ConcurrentHashMap<>();
+    private volatile long bytesPerSecond = 0;
+    private volatile int bannerStatus = 220;
+    private volatile int idleTimeoutMillis = 0;
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+
+    /** Creates a server for a corpus, listening on an ephemeral loopback port. The server doesn't accept connections
+     * until start is called.
+     *
+     * @param corpus The databases to be served.
+     * @throws IOException If the server socket can't be opened.
+     */
+    public EmbeddedDictServer(DictionarySource corpus) throws IOException {
+        this(corpus, 0);
+    }
+
+    /** Creates a server for a corpus, listening on a specific loopback port.
+     *
+     * @param corpus The databases to be served.
+     * @param port The port to listen on, or 0 for an ephemeral port.
+     * @throws IOException If the server socket can't be opened.
+     */
+    public EmbeddedDictServer(DictionarySource corpus, int port) throws IOException {
+        this(corpus, InetAddress.getLoopbackAddress(), port, Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "embedded-dict-session");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
+    }
+
+    /** Creates a server for a corpus, listening on a specific address and port.
+     *
+     * @param corpus The databases to be served.
+     * @param address The local address to listen on, or null for all addresses.
+     * @param port The port to listen on, or 0 for an ephemeral port.
+     * @param sessions The executor running the accept loop and one task per connection. It is shut down by close.
+     * @throws IOException If the server socket can't be opened.
+     */
+    public EmbeddedDictServer(DictionarySource corpus, InetAddress address, int port, ExecutorService sessions) throws IOException {
+        this.corpus = corpus;
+        this.serverSocket = new ServerSocket(port, BACKLOG, address);
+        this.sessions = sessions;
+    }
+
+    /** Starts accepting connections in the background.
+     *
+     * @return This server.
+     */
+    public EmbeddedDictServer start() {
+        sessions.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        });
+        return this;
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /** Delays the reply to every command with a given name. The delay applies to each command separately, so
+     * pipelined commands are delayed one after the other.
+     *
+     * @param command Command name (e.g., DEFINE, MATCH, SHOW), or "*" for commands without a delay of their own.
+     * @param millis Delay before the reply is sent, or 0 for none.
+     */
+    public void setLatency(String command, long millis) {
+        latencyMillis.put(command.toUpperCase(Locale.ROOT), millis);
+    }
+
+    /** Limits the rate at which each connection writes its replies.
+     *
+     * @param bytesPerSecond Maximum number of bytes written per second by each connection, or 0 for no limit.
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /** Sets the status sent to new connections instead of the 220 banner, e.g., 420 or 421 to refuse them, or 530 for
+     * access denied. Connections are closed after any status other than 220.
+     *
+     * @param statusCode The banner status code.
+     */
+    public void setBannerStatus(int statusCode) {
+        this.bannerStatus = statusCode;
+    }
+
+    /** Closes connections on which no command has been received for some time. Only applies to connections accepted
+     * afterwards.
+     *
+     * @param millis Time to wait for the next command, or 0 to wait indefinitely.
+     */
+    public void setIdleTimeout(int millis) {
+        this.idleTimeoutMillis = millis;
+    }
+
+    /** Answers the next commands with a given name with an error status instead of their normal reply.
+     *
+     * @param command Command name (e.g., DEFINE, MATCH, SHOW), or "*" for any command.
+     * @param statusCode The error status to be sent, e.g., 420 or 421.
+     * @param count Number of commands to fail.
+     */
+    public void injectError(String command, int statusCode, int count) {
+        String key = command.toUpperCase(Locale.ROOT);
+        Deque<Integer> queue = injectedErrors.get(key);
+        if (queue == null) {
+            Deque<Integer> created = new ConcurrentLinkedDeque<>();
+            queue = injectedErrors.putIfAbsent(key, created);
+            if (queue == null)
+                queue = created;
+        }
+        for (int i = 0; i < count; i++)
+            queue.add(statusCode);
+    }
+
+    public long getConnectionCount() {
+        return connections.get();
+    }
+
+    public long getCommandCount() {
+        return commands.get();
+    }
+
+    /** Stops accepting connections and closes all open ones.
+     */
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+        }
+        for (Socket socket : sockets)
+            closeQuietly(socket);
+        sessions.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            Socket accepted = null;
+            try {
+                final Socket socket = serverSocket.accept();
+                accepted = socket;
+                sockets.add(socket);
+                connections.incrementAndGet();
+                sessions.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serve(socket);
+                        } catch (IOException e) {
+                            // Client went away, was idle for too long, or the server is closing
+                        } finally {
+                            sockets.remove(socket);
+                            closeQuietly(socket);
+                        }
+                    }
+                });
+            } catch (SocketException e) {
+                return; // Server socket closed
+            } catch (IOException e) {
+                // Failed accept; keep serving other clients
+            } catch (RejectedExecutionException e) {
+                if (sessions.isShutdown())
+                    return;
+                // Too many sessions; turn this one away rather than stop accepting
+                sockets.remove(accepted);
+                refuse(accepted);
+            }
+        }
+    }
+
+    /** Answers a connection that can't be served with 420 and closes it.
+     */
+    private void refuse(Socket socket) {
+        try {
+            socket.setSoTimeout(1000);
+            new Reply(socket.getOutputStream()).line("420 " + describe(420)).send();
+        } catch (IOException e) {
+            // The connection is being closed anyway
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(idleTimeoutMillis);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Reply out = new Reply(socket.getOutputStream());
+
+        int banner = bannerStatus;
+        if (banner != 220) {
+            out.line(banner + " " + describe(banner)).send();
+            return;
+        }
+        out.line("220 embedded <auth.mime> <" + connections.get() + "@embedded>").send();
+
+        String line;
+        while ((line = readCommand(in)) != null) {
+            if (line.length() > MAX_COMMAND_LENGTH - 2) {
+                out.line("500 line too long").send();
+                return;
+            }
+            commands.incrementAndGet();
+            String[] atoms = DictStringParser.splitAtoms(line);
+            String command = atoms.length == 0 ? "" : atoms[0].toUpperCase(Locale.ROOT);
+            delay(command);
+
+            Integer error = nextError(command);
+            if (error != null) {
+                out.line(error + " " + describe(error));
+                // Only flush once the client has sent everything it pipelined, like a real server would
+                if (!in.ready() || error == 421)
+                    out.send();
+                if (error == 421)
+                    return;
+                continue;
+            }
+
+            if (command.equals("QUIT")) {
+                out.line("221 bye").send();
+                return;
+            }
+            reply(command, atoms, out);
+            if (!in.ready())
+                out.send();
+        }
+    }
+
+    /** Reads the next command line without its line terminator, reading at most one character past the longest
+     * command allowed.
+     *
+     * @return The command, longer than MAX_COMMAND_LENGTH - 2 characters if it was too long, or null at the end of
+     * the stream.
+     */
+    private static String readCommand(BufferedReader in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0)
+                return line.length() == 0 ? null : line.toString();
+            line.append((char) c);
+            // Allow for the CR, which is only removed once the line is complete
+            if (line.length() > MAX_COMMAND_LENGTH - 1)
+                return line.toString();
+        }
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r')
+            line.setLength(length - 1);
+        return line.toString();
+    }
+
+    private void reply(String command, String[] atoms, Reply out) {
+        switch (command) {
+            case "DEFINE":
+                if (atoms.length < 3)
+                    out.line("501 syntax error, illegal parameters");
+                else
+                    define(atoms[1], atoms[2], out);
+                break;
+            case "MATCH":
+                if (atoms.length < 4)
+                    out.line("501 syntax error, illegal parameters");
+                else
+                    match(atoms[1], atoms[2], atoms[3], out);
+                break;
+            case "SHOW":
+                String what = atoms.length < 2 ? "" : atoms[1].toUpperCase(Locale.ROOT);
+                if (what.equals("DB") || what.equals("DATABASES"))
+                    showDatabases(out);
+                else if (what.equals("STRAT") || what.equals("STRATEGIES"))
+                    showStrategies(out);
+                else
+                    out.line("501 syntax error, illegal parameters");
+                break;
+            case "STATUS":
+                out.line("210 status [connections=" + connections.get() + " commands=" + commands.get() + "]");
+                break;
+            case "CLIENT":
+                out.line("250 ok");
+                break;
+            default:
+                out.line("500 unknown command");
+        }
+    }
+
+    private void define(String databaseName, String word, Reply out) {
+        List<Definition> definitions = new ArrayList<>();
+        if (databaseName.equals("*") || databaseName.equals("!")) {
+            for (Database database : corpus.getDatabases()) {
+                definitions.addAll(corpus.define(database.getName(), word));
+                if (databaseName.equals("!") && !definitions.isEmpty())
+                    break;
+            }
+        } else if (!corpus.hasDatabase(databaseName)) {
+            out.line("550 invalid database, use \"SHOW DB\" for list of databases");
+            return;
+        } else {
+            definitions.addAll(corpus.define(databaseName, word));
+        }
+
+        if (definitions.isEmpty()) {
+            out.line("552 no match");
+            return;
+        }
+        out.line("150 " + definitions.size() + " definitions retrieved");
+        for (Definition definition : definitions) {
+            Database database = definition.getDatabase();
+            out.line("151 \"" + definition.getWord() + "\" " + database.getName() + " \"" + database.getDescription() + "\"");
+            text(definition.getDefinition(), out);
+        }
+        out.line("250 ok");
+    }
+
+    private void match(String databaseName, String strategy, String word, Reply out) {
+        if (strategy.equals("."))
+            strategy = "prefix"; // Server default
+        if (!isStrategy(strategy)) {
+            out.line("551 invalid strategy, use \"SHOW STRAT\" for a list of strategies");
+            return;
+        }
+
+        List<String> lines = new ArrayList<>();
+        if (databaseName.equals("*") || databaseName.equals("!")) {
+            for (Database database : corpus.getDatabases()) {
+                for (String match : corpus.match(database.getName(), strategy, word))
+                    lines.add(database.getName() + " \"" + match + "\"");
+                if (databaseName.equals("!") && !lines.isEmpty())
+                    break;
+            }
+        } else if (!corpus.hasDatabase(databaseName)) {
+            out.line("550 invalid database, use \"SHOW DB\" for list of databases");
+            return;
+        } else {
+            for (String match : corpus.match(databaseName, strategy, word))
+                lines.add(databaseName + " \"" + match + "\"");
+        }
+
+        if (lines.isEmpty()) {
+            out.line("552 no match");
+            return;
+        }
+        out.line("152 " + lines.size() + " matches found");
+        for (String line : lines)
+            out.line(line);
+        out.line(".").line("250 ok");
+    }
+
+    private void showDatabases(Reply out) {
+        List<Database> databases = corpus.getDatabases();
+        if (databases.isEmpty()) {
+            out.line("554 no databases present");
+            return;
+        }
+        out.line("110 " + databases.size() + " databases present");
+        for (Database database : databases)
+            out.line(database.getName() + " \"" + database.getDescription() + "\"");
+        out.line(".").line("250 ok");
+    }
+
+    private void showStrategies(Reply out) {
+        out.line("111 " + STRATEGIES.length + " strategies present");
+        for (String[] strategy : STRATEGIES)
+            out.line(strategy[0] + " \"" + strategy[1] + "\"");
+        out.line(".").line("250 ok");
+    }
+
+    /** Writes the lines of a text block, followed by the terminating ".".
+     */
+    private static void text(String text, Reply out) {
+        if (text != null) {
+            int start = 0;
+            while (start <= text.length()) {
+                int end = text.indexOf('\n', start);
+                if (end < 0)
+                    end = text.length();
+                int lineEnd = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+                out.textLine(text, start, lineEnd);
+                start = end + 1;
+            }
+        }
+        out.line(".");
+    }
+
+    private void delay(String command) {
+        Long millis = latencyMillis.get(command);
+        if (millis == null)
+            millis = latencyMillis.get("*");
+        if (millis != null && millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Integer nextError(String command) {
+        Deque<Integer> queue = injectedErrors.get(command);
+        Integer error = queue == null ? null : queue.poll();
+        if (error == null) {
+            queue = injectedErrors.get("*");
+            error = queue == null ? null : queue.poll();
+        }
+        return error;
+    }
+
+    private static boolean isStrategy(String name) {
+        for (String[] strategy : STRATEGIES)
+            if (strategy[0].equals(name))
+                return true;
+        return false;
+    }
+
+    private static String describe(int statusCode) {
+        switch (statusCode) {
+            case 420: return "Server temporarily unavailable";
+            case 421: return "Server shutting down at operator request";
+            case 530: return "Access denied";
+            default: return "Injected error";
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /** Buffers the lines of one or more replies and writes them to the client, respecting the bandwidth limit.
+     */
+    private class Reply {
+        private static final int CHUNK_SIZE = 1024;
+
+        private final OutputStream out;
+        private final StringBuilder buffer = new StringBuilder();
+        private long nextWriteNanos = System.nanoTime();
+
+        private Reply(OutputStream out) {
+            this.out = out;
+        }
+
+        private Reply line(String line) {
+            buffer.append(line).append("\r\n");
+            return this;
+        }
+
+        /** Appends part of a text as a line of a text block, doubling its leading period if it has one.
+         */
+        private void textLine(String text, int start, int end) {
+            if (end > start && text.charAt(start) == '.')
+                buffer.append('.');
+            buffer.append(text, start, end).append("\r\n");
+        }
+
+        private void send() throws IOException {
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            buffer.setLength(0);
+            long limit = bytesPerSecond;
+            if (limit <= 0) {
+                out.write(bytes);
+                out.flush();
+                return;
+            }
+
+            // Write in small chunks, waiting before each one until the limit allows it to be sent
+            for (int offset = 0; offset < bytes.length; offset += CHUNK_SIZE) {
+                int length = Math.min(CHUNK_SIZE, bytes.length - offset);
+                long now = System.nanoTime();
+                nextWriteNanos = Math.max(nextWriteNanos, now);
+                long wait = nextWriteNanos - now;
+                if (wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                out.write(bytes, offset, length);
+                out.flush();
+                nextWriteNanos += length * 1_000_000_000L / limit;
+            }
+        }
+    }
+}
@@ -6,8 +6,25 @@ import java.awt.*;
 
 /**
  * Created by Jonatan on 2017-09-09.
+ * <p>
+ * Draws definitions as wrapped text. A single text area is reconfigured for every cell, as JTable only uses the
+ * returned component to paint one cell at a time.
  */
 public class DefinitionRenderer implements TableCellRenderer {
+
+    private final JTextArea area = new JTextArea();
+
+    public DefinitionRenderer() {
+        area.setLineWrap(true);
+        area.setWrapStyleWord(true);
+    }
+
+    /** Returns the text area used for every cell, e.g., to find out the font and insets used for its text.
+     */
+    JTextArea getTextArea() {
+        return area;
+    }
+
     /**
      * Returns the component used for drawing the cell.  This method is
      * used to configure the renderer appropriately before drawing.
@@ -61,7 +78,10 @@ public class DefinitionRenderer implements TableCellRenderer {
      */
     @Override
     public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
-        JTextArea area = new JTextArea(value.toString());
+        area.setFont(table.getFont());
+        area.setForeground(isSelected ? table.getSelectionForeground() : table.getForeground());
+        area.setBackground(isSelected ? table.getSelectionBackground() : table.getBackground());
+        area.setText(value != null ? value.toString() : "");
         return area;
     }
 }
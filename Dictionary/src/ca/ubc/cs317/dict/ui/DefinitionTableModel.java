@@ -1,19 +1,55 @@
 package ca.ubc.cs317.dict.ui;
 
+import ca.ubc.cs317.dict.model.Database;
 import ca.ubc.cs317.dict.model.Definition;
 
+import javax.swing.*;
 import javax.swing.table.AbstractTableModel;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 /**
  * Created by Jonatan on 2017-09-09.
+ * <p>
+ * In lazy mode, set with setBodyLoader, the model keeps the headword and database of every row but only a limited
+ * number of definition bodies. Bodies beyond that window are dropped as rows arrive, and fetched again one row at a time
+ * through the loader once their row is painted, i.e., scrolled into view; the bodies of the rows furthest from it then
+ * make room. The table itself then holds and lays out a bounded number of bodies however many definitions a broad query
+ * returns, and bringing a row back never needs the full result again. The model only changes on the event dispatch
+ * thread.
  */
 public class DefinitionTableModel extends AbstractTableModel {
 
+    private static final String LOADING = "Loading...";
+
+    /** Fetches the body of a definition whose row has scrolled into view in lazy mode.
+     */
+    public interface BodyLoader {
+
+        /** Retrieves the body of a single definition again.
+         *
+         * @param word The headword of the definition.
+         * @param database The database the definition came from.
+         * @param occurrence The number of rows before this one with the same headword and database, which tells
+         *                   homographs apart.
+         * @return A future completed with the body, or with null if the definition is no longer available.
+         */
+        CompletableFuture<String> loadBody(String word, Database database, int occurrence);
+    }
+
     private List<Definition> definitionList = new ArrayList<>();
 
+    // Occurrence of each row's headword in its database, counted per database and headword
+    private final List<Integer> occurrences = new ArrayList<>();
+    private final Map<String, Integer> headwordCounts = new HashMap<>();
+
+    // Lazy mode only: rows whose body is in memory, and rows whose body is being loaded
+    private BodyLoader loader;
+    private int window;
+    private final TreeSet<Integer> loaded = new TreeSet<>();
+    private final Set<Integer> loading = new HashSet<>();
+
     /**
      * Returns the number of rows in the model. A
      * <code>JTable</code> uses this method to determine how many rows it
@@ -58,6 +94,11 @@ public class DefinitionTableModel extends AbstractTableModel {
             case 1:
                 return definition.getDatabase().getName();
             case 2:
+                // Painting a row without its body is what brings the body back in lazy mode
+                if (loader != null && definition.getDefinition() == null) {
+                    load(rowIndex);
+                    return LOADING;
+                }
                 return definition.getDefinition();
         }
         return null;
@@ -73,9 +114,117 @@ public class DefinitionTableModel extends AbstractTableModel {
         }
     }
 
+    /** Returns the definition shown in a row.
+     *
+     * @param row Index of the row.
+     * @return The definition in the row.
+     */
+    public Definition getDefinition(int row) {
+        return definitionList.get(row);
+    }
+
+    /** Switches the model to lazy mode. Rows already in the model keep their bodies.
+     *
+     * @param loader Fetches the bodies of rows that scroll into view.
+     * @param window Maximum number of bodies kept in memory.
+     */
+    public void setBodyLoader(BodyLoader loader, int window) {
+        this.loader = loader;
+        this.window = Math.max(1, window);
+    }
+
     public void populateDefinitions(Collection<Definition> definitions) {
-        definitionList.clear();
-        definitionList.addAll(definitions);
+        clearRows();
+        for (Definition definition : definitions)
+            appendRow(definition);
+        fireTableDataChanged();
+    }
+
+    public void clear() {
+        clearRows();
         fireTableDataChanged();
     }
+
+    /** Appends a single definition to the table, so that results can be shown as they arrive.
+     *
+     * @param definition The definition to be appended.
+     * @return The index of the row that was added.
+     */
+    public int addDefinition(Definition definition) {
+        int row = appendRow(definition);
+        fireTableRowsInserted(row, row);
+        return row;
+    }
+
+    private void clearRows() {
+        definitionList.clear();
+        loaded.clear();
+        loading.clear();
+        occurrences.clear();
+        headwordCounts.clear();
+    }
+
+    private int appendRow(Definition definition) {
+        int row = definitionList.size();
+        String key = definition.getDatabase().getName() + " " + definition.getWord();
+        Integer count = headwordCounts.get(key);
+        occurrences.add(count == null ? 0 : count);
+        headwordCounts.put(key, count == null ? 1 : count + 1);
+        if (loader == null) {
+            definitionList.add(definition);
+            return row;
+        }
+
+        // Rows get their own copy, as the definitions may also be held by a cache; the body is only kept while the
+        // window has room, which is the case for the first rows, those on screen when a search completes
+        Definition copy = new Definition(definition.getWord(), definition.getDatabase());
+        if (loaded.size() < window) {
+            copy.setDefinition(definition.getDefinition());
+            loaded.add(row);
+        }
+        definitionList.add(copy);
+        return row;
+    }
+
+    /** Starts loading the body of a row, unless it is already being loaded.
+     */
+    private void load(final int row) {
+        if (!loading.add(row))
+            return;
+        final Definition definition = definitionList.get(row);
+        loader.loadBody(definition.getWord(), definition.getDatabase(), occurrences.get(row))
+                .whenComplete(new BiConsumer<String, Throwable>() {
+                    @Override
+                    public void accept(final String body, final Throwable error) {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                // The table may have been cleared meanwhile
+                                if (row >= definitionList.size() || definitionList.get(row) != definition)
+                                    return;
+                                loading.remove(row);
+                                if (error != null)
+                                    return; // Tried again when the row is painted next
+                                definition.setDefinition(body != null ? body : "");
+                                loaded.add(row);
+                                evict(row);
+                                fireTableRowsUpdated(row, row);
+                            }
+                        });
+                    }
+                });
+    }
+
+    /** Drops the bodies of the rows furthest from the row that was just loaded until the window has room again.
+     */
+    private void evict(int row) {
+        while (loaded.size() > window) {
+            int first = loaded.first();
+            int last = loaded.last();
+            int victim = row - first >= last - row ? first : last;
+            loaded.remove(victim);
+            definitionList.get(victim).setDefinition(null);
+            fireTableRowsUpdated(victim, victim);
+        }
+    }
 }
@@ -1,10 +1,24 @@
 package ca.ubc.cs317.dict.ui;
 
+import ca.ubc.cs317.dict.cache.CachingDictionaryClient;
+import ca.ubc.cs317.dict.cache.DefinitionStore;
+import ca.ubc.cs317.dict.cache.MetadataSnapshot;
+import ca.ubc.cs317.dict.cache.NarrowingDictionaryClient;
+import ca.ubc.cs317.dict.cache.PersistentDictionaryClient;
 import ca.ubc.cs317.dict.exception.DictConnectionException;
+import ca.ubc.cs317.dict.index.IndexedDictionaryClient;
+import ca.ubc.cs317.dict.metrics.ClientMetrics;
+import ca.ubc.cs317.dict.metrics.Instrumentation;
+import ca.ubc.cs317.dict.metrics.MetricsLogger;
 import ca.ubc.cs317.dict.model.Database;
 import ca.ubc.cs317.dict.model.Definition;
 import ca.ubc.cs317.dict.model.MatchingStrategy;
-import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.AsyncDictionaryClient;
+import ca.ubc.cs317.dict.net.DefinitionListener;
+import ca.ubc.cs317.dict.net.DictionaryClient;
+import ca.ubc.cs317.dict.net.DictionaryConnectionPool;
+import ca.ubc.cs317.dict.net.FanOutDictionaryClient;
+import ca.ubc.cs317.dict.net.MultiEndpointClient;
 
 import javax.swing.*;
 import java.awt.*;
@@ -12,17 +26,48 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.concurrent.ExecutionException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Created by Jonatan on 2017-09-09.
  */
 public class DictionaryMain extends JFrame {
 
-    private DictionaryConnection connection;
+    private static final int MAX_CORRECTIONS = 8;
+    // Definition bodies kept in memory by the table; the others are fetched again when scrolled into view
+    private static final int BODY_WINDOW = Integer.getInteger("dict.bodyWindow", 64);
+    // Used for suggestions until the strategies are known: the server's default strategy
+    private static final MatchingStrategy DEFAULT_STRATEGY = new MatchingStrategy(".", "Server default");
+
+    private DictionaryClient connection;
+    private AsyncDictionaryClient async;
+    private IndexedDictionaryClient index;
+    private CompletableFuture<AsyncDictionaryClient> connected;
+    private int connectionGeneration = 0;
+    private CompletableFuture<Void> definitionLookup;
+    private int definitionGeneration = 0;
+    // Definitions being fetched again for the table, by database and headword, so homographs share one request
+    private final Map<String, CompletableFuture<List<Definition>>> bodyReloads = new HashMap<>();
     private String serverName = "dict.org";
+    private MetricsLogger metricsLogger;
 
     private DefaultComboBoxModel<Database> databaseModel;
     private DefaultComboBoxModel<MatchingStrategy> strategyModel;
@@ -39,8 +84,8 @@ public class DictionaryMain extends JFrame {
         this.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                if (connection == null)
-                    connection.close();
+                if (async != null)
+                    async.close();
             }
         });
         this.setDefaultCloseOperation(EXIT_ON_CLOSE);
@@ -99,12 +144,21 @@ public class DictionaryMain extends JFrame {
         searchPanel.add(searchButton, BorderLayout.LINE_END);
 
         definitionModel = new DefinitionTableModel();
+        definitionModel.setBodyLoader(new DefinitionTableModel.BodyLoader() {
+            @Override
+            public CompletableFuture<String> loadBody(String word, Database database, int occurrence) {
+                return loadDefinitionBody(word, database, occurrence);
+            }
+        }, BODY_WINDOW);
         definitionTable = new JTable(definitionModel);
-        definitionTable.getColumnModel().getColumn(2).setCellRenderer(new DefinitionRenderer());
+        DefinitionRenderer renderer = new DefinitionRenderer();
+        definitionTable.getColumnModel().getColumn(2).setCellRenderer(renderer);
         definitionTable.getColumnModel().getColumn(0).setPreferredWidth(30);
         definitionTable.getColumnModel().getColumn(1).setPreferredWidth(30);
         definitionTable.getColumnModel().getColumn(2).setPreferredWidth(500);
-        this.getContentPane().add(new JScrollPane(definitionTable), BorderLayout.CENTER);
+        JScrollPane definitionScrollPane = new JScrollPane(definitionTable);
+        new RowHeightCache(definitionTable, definitionModel, definitionScrollPane, 2, renderer);
+        this.getContentPane().add(definitionScrollPane, BorderLayout.CENTER);
     }
 
     public void handleException(Throwable ex) {
@@ -113,38 +167,58 @@ public class DictionaryMain extends JFrame {
     }
 
     public void showDefinitions() {
+        final String word = wordSearchField.getSelectedItem().toString();
+        final Database database = (Database) databaseModel.getSelectedItem();
 
-        new SwingWorker<Void, Void>() {
-            private String word = wordSearchField.getSelectedItem().toString();
-
-            @Override
-            protected Void doInBackground() throws Exception {
-                definitionModel.populateDefinitions(connection.getDefinitions(word,
-                        (Database) databaseModel.getSelectedItem()));
-                return null;
-            }
+        // Definitions are added to the table as they arrive; rows still in flight from an earlier search are dropped
+        if (definitionLookup != null)
+            definitionLookup.cancel(true);
+        final int generation = ++definitionGeneration;
+        definitionModel.clear();
 
+        final DefinitionListener listener = new DefinitionListener() {
             @Override
-            protected void done() {
-                try {
-                    get(); // Just to trigger a possible exception caused by doInBackground
-                    for (int i = 0; i<definitionModel.getRowCount() ; i++) {
-                        Component c = definitionTable.prepareRenderer(definitionTable.getCellRenderer(i, 2), i, 2);
-                        definitionTable.setRowHeight(i, Math.max((int) c.getPreferredSize().getHeight(), definitionTable.getRowHeight()));
+            public void definitionReceived(final Definition definition) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == definitionGeneration)
+                            definitionModel.addDefinition(definition);
                     }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                } catch (ExecutionException e) {
-                    handleException(e.getCause());
+                });
+            }
+        };
+        if (async != null)
+            definitionLookup = async.streamDefinitionsAsync(word, database, listener);
+        else {
+            // Still connecting: send the request as soon as the connection is up
+            definitionLookup = connected.thenCompose(new Function<AsyncDictionaryClient, CompletionStage<Void>>() {
+                @Override
+                public CompletionStage<Void> apply(AsyncDictionaryClient client) {
+                    return client.streamDefinitionsAsync(word, database, listener);
                 }
+            });
+        }
+        definitionLookup.whenComplete(new EdtCallback<Void>(this) {
+            @Override
+            protected void onSuccess(Void result) {
+                // No definition: offer the closest known headwords instead of an empty table
+                if (generation != definitionGeneration || definitionModel.getRowCount() > 0)
+                    return;
+                List<String> corrections = index.suggest(word, database, MAX_CORRECTIONS);
+                if (!corrections.isEmpty())
+                    wordSearchField.showCorrections(word, corrections);
             }
-        }.execute();
-
+        });
     }
 
     public void establishConnection() {
-        if (connection != null)
-            connection.close();
+        if (async != null)
+            async.close();
+        async = null;
+        connected = new CompletableFuture<>();
+        final int generation = ++connectionGeneration;
+        bodyReloads.clear();
 
         definitionModel.populateDefinitions(Collections.<Definition>emptyList());
         databaseModel.removeAllElements();
@@ -153,37 +227,292 @@ public class DictionaryMain extends JFrame {
         strategyModel.removeAllElements();
         wordSearchField.reset();
 
+        serverName = JOptionPane.showInputDialog(this, "Dictionary server",
+                serverName);
+        if (serverName == null) System.exit(0);
+
+        // Show the databases and strategies saved by the last run right away; they are checked once connected
+        Path metadataFile;
         try {
-            serverName = JOptionPane.showInputDialog(this, "Dictionary server",
-                    serverName);
-            if (serverName == null) System.exit(0);
-
-            if (serverName.contains(":")) {
-                String[] serverData = serverName.split(":", 2);
-                connection = new DictionaryConnection(serverData[0], Integer.parseInt(serverData[1]));
-            } else
-                connection = new DictionaryConnection(serverName);
-
-            for (Database db : connection.getDatabaseList()) {
-                databaseModel.addElement(db);
+            metadataFile = serverFile("metadata");
+        } catch (IOException e) {
+            metadataFile = null;
+        }
+        final MetadataSnapshot snapshot = metadataFile != null ? MetadataSnapshot.load(metadataFile) : null;
+        if (snapshot != null)
+            showMetadata(snapshot);
+
+        // Connect in the background so the window can be used at once; searches made meanwhile wait for the connection
+        final String servers = serverName;
+        final Path savedMetadata = metadataFile;
+        CompletableFuture.supplyAsync(new Supplier<List<DictionaryConnectionPool>>() {
+            @Override
+            public List<DictionaryConnectionPool> get() {
+                try {
+                    return openPools(servers, snapshot != null ? snapshot.getDatabases() : null);
+                } catch (DictConnectionException ex) {
+                    throw new CompletionException(ex);
+                }
             }
+        }).whenComplete(new BiConsumer<List<DictionaryConnectionPool>, Throwable>() {
+            @Override
+            public void accept(final List<DictionaryConnectionPool> pools, final Throwable error) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != connectionGeneration) {
+                            // The user has picked another server meanwhile
+                            if (pools != null)
+                                for (DictionaryConnectionPool pool : pools)
+                                    pool.close();
+                        } else if (error != null)
+                            handleException(error instanceof CompletionException ? error.getCause() : error);
+                        else
+                            connect(pools, snapshot, savedMetadata);
+                    }
+                });
+            }
+        });
+
+        wordSearchField.grabFocus();
+    }
 
-            for (MatchingStrategy strategy : connection.getStrategyList()) {
-                strategyModel.addElement(strategy);
-                if (strategy.getName().equals("prefix"))
-                    strategyModel.setSelectedItem(strategy);
+    /** Opens a pool for each of the servers, separated by commas; servers that can't be reached are skipped.
+     */
+    private static List<DictionaryConnectionPool> openPools(String servers, Collection<Database> databases)
+            throws DictConnectionException {
+        List<DictionaryConnectionPool> pools = new ArrayList<>();
+        DictConnectionException failure = null;
+        for (String server : servers.split(",")) {
+            try {
+                pools.add(openPool(server.trim(), databases));
+            } catch (DictConnectionException ex) {
+                if (failure == null) failure = ex;
             }
-        } catch (DictConnectionException ex) {
-            handleException(ex);
         }
+        if (pools.isEmpty()) throw failure;
+        return pools;
+    }
 
-        wordSearchField.grabFocus();
+    private static DictionaryConnectionPool openPool(String server, Collection<Database> databases)
+            throws DictConnectionException {
+        String host = server;
+        int port = DictionaryConnectionPool.DEFAULT_PORT;
+        if (server.contains(":")) {
+            String[] serverData = server.split(":", 2);
+            host = serverData[0];
+            port = Integer.parseInt(serverData[1]);
+        }
+        return new DictionaryConnectionPool(host, port, DictionaryConnectionPool.DEFAULT_POOL_SIZE,
+                DictionaryConnectionPool.DEFAULT_MAX_IDLE_MILLIS, DictionaryConnectionPool.DEFAULT_MAX_LIFETIME_MILLIS,
+                databases);
     }
 
-    public Collection<String> getMatchList(String word) throws DictConnectionException {
-        return connection.getMatchList(word,
-                (MatchingStrategy) strategyModel.getSelectedItem(),
-                (Database) databaseModel.getSelectedItem());
+    /** Builds the client on top of newly opened pools, then retrieves the databases and strategies of the server
+     * concurrently to replace those shown from the saved snapshot, if they have changed.
+     */
+    private void connect(final List<DictionaryConnectionPool> pools, final MetadataSnapshot snapshot,
+                         final Path metadataFile) {
+        DictionaryClient client = pools.size() == 1 ? pools.get(0) : new MultiEndpointClient(pools);
+        // Optionally search the databases of '*' and '!' lookups concurrently, one connection per database
+        if (Boolean.getBoolean("dict.fanOut"))
+            client = new FanOutDictionaryClient(client, pools.get(0).getPoolSize());
+        index = new IndexedDictionaryClient(withStore(client));
+        CachingDictionaryClient cache = new CachingDictionaryClient(new NarrowingDictionaryClient(index));
+        connection = cache;
+        async = new AsyncDictionaryClient(connection);
+        instrument(pools, cache);
+        connected.complete(async);
+
+        // Pools created from a snapshot haven't asked for the databases yet, the others just have
+        CompletableFuture<Collection<Database>> databases;
+        if (snapshot == null)
+            databases = CompletableFuture.completedFuture(pools.get(0).getDatabaseList());
+        else {
+            databases = CompletableFuture.supplyAsync(new Supplier<Collection<Database>>() {
+                @Override
+                public Collection<Database> get() {
+                    try {
+                        Collection<Database> reloaded = null;
+                        for (DictionaryConnectionPool pool : pools) {
+                            Collection<Database> list = pool.reloadDatabaseList();
+                            if (reloaded == null) reloaded = list;
+                        }
+                        return reloaded;
+                    } catch (DictConnectionException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }
+            });
+        }
+        final int generation = connectionGeneration;
+        databases.thenCombine(async.getStrategyListAsync(),
+                new BiFunction<Collection<Database>, Set<MatchingStrategy>, MetadataSnapshot>() {
+                    @Override
+                    public MetadataSnapshot apply(Collection<Database> databases, Set<MatchingStrategy> strategies) {
+                        MetadataSnapshot fresh = new MetadataSnapshot(databases, strategies);
+                        if (metadataFile != null && !fresh.sameAs(snapshot)) {
+                            try {
+                                fresh.save(metadataFile);
+                            } catch (IOException e) {
+                                // Only the next start-up is slower
+                            }
+                        }
+                        return fresh;
+                    }
+                }).whenComplete(new EdtCallback<MetadataSnapshot>(this) {
+                    @Override
+                    protected void onSuccess(MetadataSnapshot fresh) {
+                        if (generation == connectionGeneration && !fresh.sameAs(snapshot))
+                            showMetadata(fresh);
+                    }
+                });
+    }
+
+    /** Fills the database and strategy selections, keeping the current selections if they are still available.
+     */
+    private void showMetadata(MetadataSnapshot metadata) {
+        Database selectedDatabase = (Database) databaseModel.getSelectedItem();
+        MatchingStrategy selectedStrategy = (MatchingStrategy) strategyModel.getSelectedItem();
+
+        databaseModel.removeAllElements();
+        databaseModel.addElement(new Database("*", "All databases"));
+        databaseModel.addElement(new Database("!", "Any database"));
+        for (Database db : metadata.getDatabases()) {
+            databaseModel.addElement(db);
+        }
+        int selected = selectedDatabase != null ? databaseModel.getIndexOf(selectedDatabase) : -1;
+        if (selected >= 0)
+            databaseModel.setSelectedItem(databaseModel.getElementAt(selected));
+
+        strategyModel.removeAllElements();
+        for (MatchingStrategy strategy : metadata.getStrategies()) {
+            strategyModel.addElement(strategy);
+            if (selectedStrategy != null ? strategy.equals(selectedStrategy) : strategy.getName().equals("prefix"))
+                strategyModel.setSelectedItem(strategy);
+        }
+    }
+
+    /** Exposes the client metrics and the statistics of the current pools and cache over JMX and, if the
+     * dict.metrics.logInterval system property is set to a number of seconds, in a periodic log line.
+     */
+    private void instrument(final List<DictionaryConnectionPool> pools, final CachingDictionaryClient cache) {
+        Instrumentation.register("Client", null, ClientMetrics.getDefault());
+        for (DictionaryConnectionPool pool : pools)
+            Instrumentation.register("ConnectionPool", pools.size() == 1 ? null : pool.getHost() + ":" + pool.getPort(), pool);
+        Instrumentation.register("Cache", null, cache);
+
+        long interval = Long.getLong("dict.metrics.logInterval", 0);
+        if (interval > 0 && metricsLogger == null)
+            metricsLogger = new MetricsLogger(ClientMetrics.getDefault(), interval);
+        if (metricsLogger != null) {
+            metricsLogger.addSource("pool", new Callable<String>() {
+                @Override
+                public String call() {
+                    int active = 0, size = 0;
+                    for (DictionaryConnectionPool pool : pools) {
+                        active += pool.getActiveCount();
+                        size += pool.getPoolSize();
+                    }
+                    return active + "/" + size + " active";
+                }
+            });
+            metricsLogger.addSource("cache", new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return cache.getStats();
+                }
+            });
+        }
+    }
+
+    /** Adds a persistent definition store for the current server in front of a client, so definitions retrieved in
+     * earlier runs don't need to be retrieved again. If the store can't be opened, the client is used on its own.
+     */
+    private DictionaryClient withStore(DictionaryClient client) {
+        try {
+            return new PersistentDictionaryClient(client, new DefinitionStore(serverFile("definitions")));
+        } catch (IOException e) {
+            return client;
+        }
+    }
+
+    /** Fetches the body of a definition dropped by the table with a DEFINE of its own headword in its own database, so
+     * that only that headword's definitions are retrieved or read from the caches, however broad the search was. Rows
+     * of the same headword and database share a single request while it is in flight; the definition is then picked by
+     * its occurrence among them.
+     */
+    private CompletableFuture<String> loadDefinitionBody(final String headword, final Database database, final int occurrence) {
+        final String key = database.getName() + " " + headword;
+        CompletableFuture<List<Definition>> reload = bodyReloads.get(key);
+        if (reload == null) {
+            reload = connected.thenCompose(new Function<AsyncDictionaryClient, CompletionStage<Collection<Definition>>>() {
+                @Override
+                public CompletionStage<Collection<Definition>> apply(AsyncDictionaryClient async) {
+                    return async.getDefinitionsAsync(headword, database);
+                }
+            }).thenApply(new Function<Collection<Definition>, List<Definition>>() {
+                @Override
+                public List<Definition> apply(Collection<Definition> definitions) {
+                    return new ArrayList<>(definitions);
+                }
+            });
+            bodyReloads.put(key, reload);
+            final CompletableFuture<List<Definition>> started = reload;
+            reload.whenComplete(new BiConsumer<List<Definition>, Throwable>() {
+                @Override
+                public void accept(List<Definition> definitions, Throwable error) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Once complete, the caches answer further rows; the table keeps no result of its own
+                            bodyReloads.remove(key, started);
+                        }
+                    });
+                }
+            });
+        }
+        return reload.thenApply(new Function<List<Definition>, String>() {
+            @Override
+            public String apply(List<Definition> definitions) {
+                int seen = 0;
+                for (Definition definition : definitions) {
+                    if (isSameDefinition(definition, headword, database) && seen++ == occurrence)
+                        return definition.getDefinition();
+                }
+                return null;
+            }
+        });
+    }
+
+    private static boolean isSameDefinition(Definition definition, String headword, Database database) {
+        return definition.getWord().equals(headword) && definition.getDatabase() != null && database != null &&
+                definition.getDatabase().getName().equals(database.getName());
+    }
+
+    /** Returns the file with the given extension kept for the current server in the .dictionary directory of the
+     * user's home, creating the directory if needed.
+     */
+    private Path serverFile(String extension) throws IOException {
+        Path directory = Paths.get(System.getProperty("user.home"), ".dictionary");
+        Files.createDirectories(directory);
+        return directory.resolve(serverName.replaceAll("[^A-Za-z0-9._-]", "_") + "." + extension);
+    }
+
+    public CompletableFuture<Set<String>> getMatchListAsync(final String word) {
+        final MatchingStrategy strategy = strategyModel.getSelectedItem() != null ?
+                (MatchingStrategy) strategyModel.getSelectedItem() : DEFAULT_STRATEGY;
+        final Database database = (Database) databaseModel.getSelectedItem();
+        if (async != null)
+            return async.getMatchListAsync(word, strategy, database);
+
+        // Still connecting: send the request as soon as the connection is up
+        return connected.thenCompose(new Function<AsyncDictionaryClient, CompletionStage<Set<String>>>() {
+            @Override
+            public CompletionStage<Set<String>> apply(AsyncDictionaryClient client) {
+                return client.getMatchListAsync(word, strategy, database);
+            }
+        });
     }
 
     public static void main(String[] args) {
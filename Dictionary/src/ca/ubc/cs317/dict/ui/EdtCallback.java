@@ -0,0 +1,40 @@
+package ca.ubc.cs317.dict.ui;
+
+import javax.swing.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+
+/**
+ * Completion handler for asynchronous lookups that hands the result over to the Swing event dispatch thread.
+ * Successful results go to onSuccess, failures to DictionaryMain.handleException, and cancelled lookups are ignored.
+ */
+abstract class EdtCallback<T> implements BiConsumer<T, Throwable> {
+
+    private final DictionaryMain main;
+
+    EdtCallback(DictionaryMain main) {
+        this.main = main;
+    }
+
+    protected abstract void onSuccess(T result);
+
+    @Override
+    public void accept(final T result, final Throwable error) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (error == null)
+                    onSuccess(result);
+                else if (!(unwrap(error) instanceof CancellationException))
+                    main.handleException(unwrap(error));
+            }
+        });
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null)
+            return error.getCause();
+        return error;
+    }
+}
@@ -0,0 +1,240 @@
+package ca.ubc.cs317.dict.ui;
+
+import ca.ubc.cs317.dict.model.Definition;
+
+import javax.swing.*;
+import javax.swing.event.*;
+import javax.swing.table.TableColumn;
+import java.awt.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Sets the height of each row of the definition table to fit its wrapped definition. Heights are measured on a
+ * background thread and cached for each definition at the column width they were measured for, and only the rows in or
+ * near the visible part of the table are measured, so a search returning many long definitions costs no more layout on
+ * the event dispatch thread than a short one. Rows that haven't been measured yet keep the default height.
+ */
+class RowHeightCache {
+
+    // Rows measured beyond each end of the visible part, so that scrolling rarely reaches rows of the default height
+    private static final int PREFETCH_ROWS = 20;
+    private static final int CARET_WIDTH = 1;
+
+    private final JTable table;
+    private final DefinitionTableModel model;
+    private final int column;
+    private final DefinitionRenderer renderer;
+    private final ExecutorService measurer;
+
+    // The following are only used on the event dispatch thread
+    private final Map<Definition, Size> heights = new WeakHashMap<>();
+    private final Set<Definition> measuring = Collections.newSetFromMap(new IdentityHashMap<Definition, Boolean>());
+    private boolean updateQueued = false;
+
+    /** Starts keeping the row heights of a table up to date.
+     *
+     * @param table The table showing the definitions.
+     * @param model The model of the table.
+     * @param scrollPane The scroll pane the table is shown in.
+     * @param column Index in the model of the column showing the definition text.
+     * @param renderer The renderer of that column.
+     */
+    RowHeightCache(JTable table, DefinitionTableModel model, JScrollPane scrollPane, int column,
+                   DefinitionRenderer renderer) {
+        this.table = table;
+        this.model = model;
+        this.column = column;
+        this.renderer = renderer;
+        this.measurer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "dict-row-heights");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // Rows added or replaced, the table scrolled or resized, or the column resized
+        model.addTableModelListener(new TableModelListener() {
+            @Override
+            public void tableChanged(TableModelEvent e) {
+                scheduleUpdate();
+            }
+        });
+        scrollPane.getViewport().addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                scheduleUpdate();
+            }
+        });
+        table.getColumnModel().addColumnModelListener(new TableColumnModelListener() {
+            @Override
+            public void columnMarginChanged(ChangeEvent e) {
+                scheduleUpdate();
+            }
+
+            @Override
+            public void columnAdded(TableColumnModelEvent e) {
+            }
+
+            @Override
+            public void columnRemoved(TableColumnModelEvent e) {
+            }
+
+            @Override
+            public void columnMoved(TableColumnModelEvent e) {
+            }
+
+            @Override
+            public void columnSelectionChanged(ListSelectionEvent e) {
+            }
+        });
+    }
+
+    /** Updates the row heights once the events currently queued have been handled, so that a burst of changes, such as
+     * definitions arriving one at a time, leads to a single update.
+     */
+    private void scheduleUpdate() {
+        if (updateQueued)
+            return;
+        updateQueued = true;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                updateQueued = false;
+                update();
+            }
+        });
+    }
+
+    /** Applies the cached heights of the rows near the visible part of the table, and measures those that have no
+     * height for the current column width in the background.
+     */
+    private void update() {
+        int rows = table.getRowCount();
+        final int width = textWidth();
+        if (rows == 0 || width <= 0)
+            return;
+
+        Rectangle visible = table.getVisibleRect();
+        int first = table.rowAtPoint(new Point(0, visible.y));
+        int last = table.rowAtPoint(new Point(0, visible.y + visible.height - 1));
+        first = Math.max(0, (first < 0 ? 0 : first) - PREFETCH_ROWS);
+        last = Math.min(rows - 1, (last < 0 ? rows - 1 : last) + PREFETCH_ROWS);
+
+        // The texts are taken here, as the model may drop the body of a definition while it is being measured
+        final Map<Definition, String> pending = new IdentityHashMap<>();
+        for (int row = first; row <= last; row++) {
+            Definition definition = model.getDefinition(row);
+            Size size = heights.get(definition);
+            if (size != null && size.width == width)
+                setRowHeight(row, size.height);
+            else if (definition.getDefinition() == null)
+                continue; // Body not loaded yet, the row keeps its height until it is
+            else if (measuring.add(definition))
+                pending.put(definition, definition.getDefinition());
+        }
+        if (pending.isEmpty())
+            return;
+
+        final FontMetrics metrics = table.getFontMetrics(table.getFont());
+        final Insets insets = renderer.getTextArea().getInsets();
+        final int tabSize = renderer.getTextArea().getTabSize();
+        measurer.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Map<Definition, Integer> measured = new IdentityHashMap<>();
+                for (Map.Entry<Definition, String> entry : pending.entrySet()) {
+                    int lines = countLines(entry.getValue(), metrics, width, tabSize);
+                    measured.put(entry.getKey(), lines * metrics.getHeight() + insets.top + insets.bottom);
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Map.Entry<Definition, Integer> entry : measured.entrySet()) {
+                            measuring.remove(entry.getKey());
+                            heights.put(entry.getKey(), new Size(width, entry.getValue()));
+                        }
+                        // The rows may have moved or scrolled out of view meanwhile
+                        scheduleUpdate();
+                    }
+                });
+            }
+        });
+    }
+
+    private void setRowHeight(int row, int height) {
+        height = Math.max(height, table.getRowHeight());
+        if (table.getRowHeight(row) != height)
+            table.setRowHeight(row, height);
+    }
+
+    /** Returns the width available to the text in the definition column, or 0 if the column isn't shown.
+     */
+    private int textWidth() {
+        Enumeration<TableColumn> columns = table.getColumnModel().getColumns();
+        while (columns.hasMoreElements()) {
+            TableColumn tableColumn = columns.nextElement();
+            if (tableColumn.getModelIndex() == column) {
+                // A text area also keeps room for its caret when computing its preferred size
+                Insets insets = renderer.getTextArea().getInsets();
+                return tableColumn.getWidth() - table.getIntercellSpacing().width - insets.left - insets.right - CARET_WIDTH;
+            }
+        }
+        return 0;
+    }
+
+    /** Counts the lines a text takes up when wrapped at word boundaries to a given width, the way a JTextArea with word
+     * wrapping lays it out: a line that doesn't fit breaks after the last whitespace up to and including the first
+     * character that doesn't fit, or before that character if there is no such whitespace.
+     */
+    static int countLines(String text, FontMetrics metrics, int width, int tabSize) {
+        if (text == null || text.isEmpty())
+            return 1;
+        int tabWidth = Math.max(1, tabSize * metrics.charWidth('m'));
+        int lines = 0;
+        for (String paragraph : text.replace("\r", "").split("\n", -1)) {
+            int length = paragraph.length();
+            int start = 0;
+            while (true) {
+                lines++;
+                int x = 0;
+                int i = start;
+                while (i < length) {
+                    char c = paragraph.charAt(i);
+                    int advance = c == '\t' ? tabWidth - x % tabWidth : metrics.charWidth(c);
+                    if (x + advance > width)
+                        break;
+                    x += advance;
+                    i++;
+                }
+                if (i >= length)
+                    break;
+
+                int end = i;
+                for (int j = i; j >= start; j--) {
+                    if (Character.isWhitespace(paragraph.charAt(j))) {
+                        end = j + 1;
+                        break;
+                    }
+                }
+                // A break right before the end of the paragraph still leaves an empty line
+                start = Math.max(end, start + 1);
+            }
+        }
+        return lines;
+    }
+
+    private static class Size {
+        private final int width;
+        private final int height;
+
+        private Size(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
@@ -4,20 +4,29 @@ import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.plaf.metal.MetalComboBoxEditor;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Created by Jonatan on 2017-09-10.
  */
 public class WordSearchField extends JComboBox<String> implements DocumentListener {
 
+    public static final int DEFAULT_DEBOUNCE_MILLIS = 150;
+
     private DictionaryMain main;
     private JTextField textField;
 
     private DefaultComboBoxModel<String> model;
 
+    private Timer debounceTimer;
+    private CompletableFuture<Set<String>> pending;
+    private String pendingWord;
+
     public WordSearchField(DictionaryMain main) {
 
         this.setModel(model = new DefaultComboBoxModel<>());
@@ -37,9 +46,19 @@ public class WordSearchField extends JComboBox<String> implements DocumentListen
         });
         textField = (JTextField) getEditor().getEditorComponent();
         textField.getDocument().addDocumentListener(this);
+
+        debounceTimer = new Timer(DEFAULT_DEBOUNCE_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                requestSuggestions();
+            }
+        });
+        debounceTimer.setRepeats(false);
     }
 
     public void reset() {
+        debounceTimer.stop();
+        cancelPending();
         model.removeAllElements();
         textField.setText("");
     }
@@ -60,41 +79,84 @@ public class WordSearchField extends JComboBox<String> implements DocumentListen
     }
 
 
+    /** Sets how long typing must pause before suggestions are requested for the current text.
+     *
+     * @param millis Delay after the last keystroke, in milliseconds.
+     */
+    public void setDebounceDelay(int millis) {
+        debounceTimer.setInitialDelay(millis);
+    }
+
     public void showSuggestions() {
         final String typed = textField.getText();
         model.removeAllElements();
-        if (typed.isEmpty())
+
+        // Keep a lookup that is already running for this exact text; any other one is stale
+        if (pending != null && !pending.isDone() && typed.equals(pendingWord))
             return;
+        cancelPending();
 
-        new SwingWorker<Set<String>, String>() {
-            String word = typed;
+        if (typed.isEmpty()) {
+            debounceTimer.stop();
+            return;
+        }
+        debounceTimer.restart();
+    }
 
-            @Override
-            protected Set<String> doInBackground() throws Exception {
-                Set<String> matches = new LinkedHashSet<>();
-                matches.add(word);
-                matches.addAll(main.getMatchList(word));
-                return matches;
-            }
+    /** Sends the MATCH request for the text in the field once typing has paused. Only the most recent request is kept;
+     * older ones are cancelled so they don't hold a connection that the latest keystroke needs.
+     */
+    private void requestSuggestions() {
+        final String typed = textField.getText();
+        if (typed.isEmpty())
+            return;
 
+        final CompletableFuture<Set<String>> request = main.getMatchListAsync(typed);
+        pending = request;
+        pendingWord = typed;
+        request.whenComplete(new EdtCallback<Set<String>>(main) {
             @Override
-            protected void done() {
-                // If user typed another character since this worker started, stop
-                if (!textField.getText().equals(word)) return;
-                try {
-                    for (String match : this.get()) {
-                        model.addElement(match);
-                    }
-                    if (model.getSize() > 1)
-                        showPopup();
-                    else
-                        hidePopup();
-                } catch (ExecutionException e) {
-                    main.handleException(e.getCause());
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+            protected void onSuccess(Set<String> result) {
+                // If user typed another character since this lookup started, stop
+                if (request != pending || !textField.getText().equals(typed)) return;
+                Set<String> matches = new LinkedHashSet<>();
+                matches.add(typed);
+                matches.addAll(result);
+                for (String match : matches) {
+                    model.addElement(match);
                 }
+                if (model.getSize() > 1)
+                    showPopup();
+                else
+                    hidePopup();
             }
-        }.execute();
+        });
+    }
+
+    /** Offers corrections for a word that has no definition, in the same dropdown as the suggestions shown while
+     * typing. The text of the field is left as it is.
+     *
+     * @param word The word that was looked up.
+     * @param corrections The corrections, best first.
+     */
+    public void showCorrections(String word, List<String> corrections) {
+        debounceTimer.stop();
+        cancelPending();
+        model.removeAllElements();
+        Set<String> items = new LinkedHashSet<>();
+        items.add(word);
+        items.addAll(corrections);
+        for (String item : items) {
+            model.addElement(item);
+        }
+        if (model.getSize() > 1)
+            showPopup();
+    }
+
+    private void cancelPending() {
+        if (pending != null)
+            pending.cancel(true);
+        pending = null;
+        pendingWord = null;
     }
 }
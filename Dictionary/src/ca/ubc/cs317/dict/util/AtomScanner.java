@@ -0,0 +1,169 @@
+package ca.ubc.cs317.dict.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cursor over the DICT atoms of a line, following exactly the same rules as DictStringParser.splitAtoms: an atom is
+ * either the contents of a pair of double quotes, or a sequence of non-blank characters (in which quotes are ordinary
+ * characters). Instead of building an array of Strings, the scanner reports the start and end offset of each atom in
+ * turn, and only creates a String for the atoms that are asked for.
+ * <p>
+ * A scanner can work on a CharSequence or on the bytes of a UTF-8 encoded line. Since blanks and quotes are ASCII, the
+ * offsets of a byte line are byte offsets and never split a multi-byte character. A single scanner can be reset and
+ * reused for any number of lines; it is not thread-safe.
+ */
+public class AtomScanner {
+
+    private CharSequence text;
+    private byte[] bytes;
+    private int limit;
+    private int position;
+
+    private int atomStart;
+    private int atomEnd;
+    private boolean quoted;
+
+    /** Starts scanning a line of text.
+     *
+     * @param text The line to be scanned.
+     * @return This scanner.
+     */
+    public AtomScanner reset(CharSequence text) {
+        return reset(text, 0, text.length());
+    }
+
+    /** Starts scanning part of a line of text.
+     *
+     * @param text The text containing the line.
+     * @param start Offset of the first character to be scanned.
+     * @param end Offset after the last character to be scanned.
+     * @return This scanner.
+     */
+    public AtomScanner reset(CharSequence text, int start, int end) {
+        this.text = text;
+        this.bytes = null;
+        return start(start, end);
+    }
+
+    /** Starts scanning a UTF-8 encoded line held in a byte array.
+     *
+     * @param bytes The array containing the line.
+     * @param start Offset of the first byte to be scanned.
+     * @param end Offset after the last byte to be scanned.
+     * @return This scanner.
+     */
+    public AtomScanner reset(byte[] bytes, int start, int end) {
+        this.text = null;
+        this.bytes = bytes;
+        return start(start, end);
+    }
+
+    /** Moves to the next atom of the line.
+     *
+     * @return true if an atom was found, false if there are no atoms left.
+     */
+    public boolean next() {
+        while (position < limit && isBlank(charAt(position)))
+            position++;
+        if (position == limit)
+            return false;
+
+        if (charAt(position) == '"') {
+            int close = position + 1;
+            while (close < limit && charAt(close) != '"')
+                close++;
+            if (close < limit) {
+                atomStart = position + 1;
+                atomEnd = close;
+                quoted = true;
+                position = close + 1;
+                return true;
+            }
+            // An unmatched quote is part of an unquoted atom
+        }
+        atomStart = position;
+        while (position < limit && !isBlank(charAt(position)))
+            position++;
+        atomEnd = position;
+        quoted = false;
+        return true;
+    }
+
+    /** Moves past a number of atoms.
+     *
+     * @param count Number of atoms to skip.
+     * @return true if all atoms were skipped, false if the line ended first.
+     */
+    public boolean skip(int count) {
+        for (int i = 0; i < count; i++) {
+            if (!next())
+                return false;
+        }
+        return true;
+    }
+
+    /** Returns the offset of the first character of the current atom, excluding its opening quote. */
+    public int start() {
+        return atomStart;
+    }
+
+    /** Returns the offset after the last character of the current atom, excluding its closing quote. */
+    public int end() {
+        return atomEnd;
+    }
+
+    /** Returns whether the current atom was enclosed in double quotes. */
+    public boolean isQuoted() {
+        return quoted;
+    }
+
+    /** Creates a String with the contents of the current atom.
+     *
+     * @return The current atom, decoded from UTF-8 if the line is a byte array.
+     */
+    public String atom() {
+        if (bytes != null)
+            return new String(bytes, atomStart, atomEnd - atomStart, StandardCharsets.UTF_8);
+        return text.subSequence(atomStart, atomEnd).toString();
+    }
+
+    /** Moves to the next atom and returns it.
+     *
+     * @return The next atom, or null if there are no atoms left.
+     */
+    public String nextAtom() {
+        return next() ? atom() : null;
+    }
+
+    /** Compares the current atom with an ASCII string without creating a String for the atom.
+     *
+     * @param value The string to compare to; only meaningful for ASCII values when scanning bytes.
+     * @return true if the atom contains exactly the characters of value.
+     */
+    public boolean atomEquals(String value) {
+        if (atomEnd - atomStart != value.length())
+            return false;
+        for (int i = 0; i < value.length(); i++) {
+            if (charAt(atomStart + i) != value.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private AtomScanner start(int start, int end) {
+        position = start;
+        limit = end;
+        atomStart = atomEnd = start;
+        quoted = false;
+        return this;
+    }
+
+    private int charAt(int index) {
+        return bytes != null ? bytes[index] & 0xFF : text.charAt(index);
+    }
+
+    private static boolean isBlank(int c) {
+        // Same characters as \s in java.util.regex
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
@@ -26,4 +26,15 @@ public class DictStringParser {
         }
         return list.toArray(new String[list.size()]);
     }
+
+    /** Returns a scanner over the DICT-supported atoms of a String, with the same splitting rules as splitAtoms. The
+     * scanner reports the position of each atom and only creates Strings for the atoms that are requested, which
+     * avoids the per-line garbage of splitAtoms when parsing large replies.
+     *
+     * @param original Original string to be scanned.
+     * @return A scanner positioned before the first atom of the string.
+     */
+    public static AtomScanner scanAtoms(CharSequence original) {
+        return new AtomScanner().reset(original);
+    }
 }
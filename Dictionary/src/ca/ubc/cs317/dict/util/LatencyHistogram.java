@@ -0,0 +1,145 @@
+package ca.ubc.cs317.dict.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative values, such as latencies in microseconds, with the same bucket layout as an HdrHistogram
+ * with two significant digits: values below 256 are counted exactly, and larger values fall into buckets no wider than
+ * 1/128 of their value, so every reported percentile is within 1% of the recorded value. Memory use only depends on
+ * the highest trackable value (a few thousand counters for an hour in microseconds), not on the number of values.
+ * <p>
+ * Values can be recorded concurrently from any number of threads without locking. Reading percentiles while values are
+ * being recorded is allowed, but gives an approximate result.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    private final long highestTrackableValue;
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /** Creates an empty histogram.
+     *
+     * @param highestTrackableValue Largest value that can be recorded; larger values are counted as this value.
+     */
+    public LatencyHistogram(long highestTrackableValue) {
+        if (highestTrackableValue < SUB_BUCKET_COUNT)
+            highestTrackableValue = SUB_BUCKET_COUNT;
+        this.highestTrackableValue = highestTrackableValue;
+        this.counts = new AtomicLongArray(indexOf(highestTrackableValue) + 1);
+    }
+
+    /** Records a single value.
+     *
+     * @param value The value to be recorded; negative values are counted as 0.
+     */
+    public void recordValue(long value) {
+        value = Math.max(0, Math.min(value, highestTrackableValue));
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(value);
+        long max;
+        while (value > (max = maxValue.get()) && !maxValue.compareAndSet(max, value)) {
+            // Retry until the maximum is at least this value
+        }
+    }
+
+    /** Records a value, correcting for coordinated omission: if the value is larger than the interval at which values
+     * are expected, the requests that would have been issued while this one was stalled are recorded too, with the
+     * latencies they would have seen (value - interval, value - 2 * interval, and so on).
+     *
+     * @param value The value to be recorded.
+     * @param expectedInterval The expected interval between values, in the same unit, or 0 for no correction.
+     */
+    public void recordValueWithExpectedInterval(long value, long expectedInterval) {
+        recordValue(value);
+        if (expectedInterval <= 0)
+            return;
+        for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval)
+            recordValue(missing);
+    }
+
+    /** Adds all values recorded in another histogram to this one.
+     *
+     * @param other A histogram with the same highest trackable value.
+     */
+    public void add(LatencyHistogram other) {
+        if (other.counts.length() != counts.length())
+            throw new IllegalArgumentException("Histograms have different ranges");
+        for (int i = 0; i < counts.length(); i++) {
+            long count = other.counts.get(i);
+            if (count != 0)
+                counts.addAndGet(i, count);
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalValue.addAndGet(other.totalValue.get());
+        long max;
+        long otherMax = other.maxValue.get();
+        while (otherMax > (max = maxValue.get()) && !maxValue.compareAndSet(max, otherMax)) {
+            // Retry until the maximum is at least the other maximum
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+        totalCount.set(0);
+        totalValue.set(0);
+        maxValue.set(0);
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxValue() {
+        return maxValue.get();
+    }
+
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalValue.get() / count;
+    }
+
+    /** Returns the value below which a given percentage of the recorded values fall.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The highest value equivalent to the recorded value at that percentile (i.e., the top of its bucket), or 0
+     * if the histogram is empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0)
+            return 0;
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target)
+                return Math.min(highestEquivalentValue(i), maxValue.get());
+        }
+        return maxValue.get();
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+        // Shift that brings the value into [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift) - SUB_BUCKET_HALF_COUNT;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
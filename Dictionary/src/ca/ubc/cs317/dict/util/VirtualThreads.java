@@ -0,0 +1,26 @@
+package ca.ubc.cs317.dict.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads on JDKs that provide them (21 and later). The executor is looked up by reflection, so the
+ * code still builds and runs on older JDKs, where callers fall back to platform threads.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /** Creates an executor that starts a new virtual thread for every task.
+     *
+     * @return The executor, or null if this JDK doesn't provide virtual threads.
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}